@@ -0,0 +1,33 @@
+package com.pacifique.microservices.api.composite.product;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One element of a streamed composite product.
+ *
+ * The stream starts with a PRODUCT part holding the product header, followed by one
+ * RECOMMENDATION or REVIEW part per summary, in the order they arrive from the core services.
+ */
+@Data
+@NoArgsConstructor(force = true)
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductAggregatePart {
+
+    public enum Type {
+        PRODUCT,
+        RECOMMENDATION,
+        REVIEW
+    }
+
+    private final Type type;
+    private final int productId;
+    private final String name;
+    private final Integer weight;
+    private final RecommendationSummary recommendation;
+    private final ReviewSummary review;
+    private final String serviceAddress;
+}
@@ -1,5 +1,6 @@
 package com.pacifique.microservices.api.composite.product;
 
+import com.pacifique.microservices.api.core.review.ReviewStatistics;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -10,9 +11,13 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Tag(name = "ProductComposite", description = "REST API for product composite information.")
 public interface ProductCompositeService {
 
@@ -59,6 +64,111 @@ public interface ProductCompositeService {
             produces = "application/json")
     Mono<ProductAggregate> getProduct(@PathVariable int productId);
 
+    /**
+     * Sample usage: "curl -H "Accept: application/x-ndjson" $HOST:$PORT/product-composite/1/stream".
+     *
+     * @param productId Id of the product
+     * @return the product header followed by its recommendation and review summaries, as they arrive
+     */
+    @Operation(
+            summary = "${api.product-composite.stream-composite-product.description}",
+            description = "${api.product-composite.stream-composite-product.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "404", description = "${api.responseCodes.notFound.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(
+            value = "/product-composite/{productId}/stream",
+            produces = {"application/x-ndjson", "text/event-stream"})
+    Flux<ProductAggregatePart> streamProduct(@PathVariable int productId);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/product-composite/1/recommendations?limit=10".
+     *
+     * @param productId Id of the product
+     * @param limit max number of recommendations in the page
+     * @param cursor the nextCursor of the previous page, leave out to get the first page
+     * @return a page of the recommendation summaries of the product
+     */
+    @Operation(
+            summary = "${api.product-composite.get-composite-product-recommendations.description}",
+            description = "${api.product-composite.get-composite-product-recommendations.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(
+            value = "/product-composite/{productId}/recommendations",
+            produces = "application/json")
+    Mono<RecommendationSummaryPage> getProductRecommendations(
+            @PathVariable int productId,
+            @RequestParam(value = "limit", required = false, defaultValue = "20") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/product-composite/1/reviews?limit=10".
+     *
+     * @param productId Id of the product
+     * @param limit max number of reviews in the page
+     * @param cursor the nextCursor of the previous page, leave out to get the first page
+     * @return a page of the review summaries of the product
+     */
+    @Operation(
+            summary = "${api.product-composite.get-composite-product-reviews.description}",
+            description = "${api.product-composite.get-composite-product-reviews.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(
+            value = "/product-composite/{productId}/reviews",
+            produces = "application/json")
+    Mono<ReviewSummaryPage> getProductReviews(
+            @PathVariable int productId,
+            @RequestParam(value = "limit", required = false, defaultValue = "20") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/product-composite/review-statistics?ids=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the number of reviews and the latest review of each product, without reading the reviews
+     */
+    @Operation(
+            summary = "${api.product-composite.get-composite-review-statistics.description}",
+            description = "${api.product-composite.get-composite-review-statistics.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(
+            value = "/product-composite/review-statistics",
+            produces = "application/json")
+    Flux<ReviewStatistics> getReviewStatistics(@RequestParam(value = "ids", required = true) List<Integer> productIds);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/product-composite?ids=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the composite product info of the products found, products that don't exist are left out
+     */
+    @Operation(
+            summary = "${api.product-composite.get-composite-products.description}",
+            description = "${api.product-composite.get-composite-products.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(
+            value = "/product-composite",
+            produces = "application/json")
+    Flux<ProductAggregate> getProducts(@RequestParam(value = "ids", required = true) List<Integer> productIds);
 
 
     /**
@@ -0,0 +1,15 @@
+package com.pacifique.microservices.api.composite.product;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor(force = true)
+@AllArgsConstructor
+public class RecommendationSummaryPage {
+    private List<RecommendationSummary> recommendations;
+    private String nextCursor;
+}
@@ -0,0 +1,15 @@
+package com.pacifique.microservices.api.composite.product;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor(force = true)
+@AllArgsConstructor
+public class ReviewSummaryPage {
+    private List<ReviewSummary> reviews;
+    private String nextCursor;
+}
@@ -1,9 +1,12 @@
 package com.pacifique.microservices.api.composite.product;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @AllArgsConstructor
 @NoArgsConstructor(force = true)
 @Data
@@ -12,4 +15,15 @@ public class ServiceAddresses {
     private final String pro;
     private final String rev;
     private final String rec;
+
+    /**
+     * Services that did not answer in time or failed, and whose part of the response is missing.
+     * Left out of the response if all services answered.
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private final List<String> degraded;
+
+    public ServiceAddresses(String cmp, String pro, String rev, String rec) {
+        this(cmp, pro, rev, rec, List.of());
+    }
 }
@@ -1,8 +1,11 @@
 package com.pacifique.microservices.api.core.product;
 
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ProductService {
 
     /**
@@ -28,9 +31,19 @@ public interface ProductService {
     */
     @GetMapping(
             path = "/product/{productId}",
-            produces = "application/json")
+            produces = {"application/json", "application/x-jackson-smile"})
     Mono<Product> getProduct( @PathVariable int productId);
 
+    /**
+     * Sample usage: "curl $HOST:$PORT/product?productIds=1,2,3"
+     * @param productIds Ids of the products
+     * @return the products found, products that don't exist are left out
+     */
+    @GetMapping(
+            path = "/product",
+            produces = {"application/json", "application/stream+x-jackson-smile"})
+    Flux<Product> getProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/product/1
      * @ PathVariable productId
@@ -0,0 +1,16 @@
+package com.pacifique.microservices.api.core.recommendation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class RecommendationPage {
+    private List<Recommendation> recommendations;
+    /** Opaque cursor to get the next page with, null on the last page */
+    private String nextCursor;
+}
@@ -4,6 +4,7 @@ import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 
 public interface RecommendationService {
 
@@ -29,9 +30,50 @@ public interface RecommendationService {
      * @param productId Id of the product
      * @return the recommendations of the product
      */
-    @GetMapping(path = "/recommendation",produces = "application/json")
+    @GetMapping(path = "/recommendation",produces = {"application/json", "application/stream+x-jackson-smile"})
     Flux<Recommendation> getRecommendations(@RequestParam(value = "productId",required = true) int productId);
 
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation?productId=1&limit=10&cursor=MToxMA".
+     *
+     * @param productId Id of the product
+     * @param limit max number of recommendations in the page
+     * @param cursor the nextCursor of the previous page, leave out to get the first page
+     * @return a page of the recommendations of the product, ordered by recommendationId
+     */
+    @GetMapping(path = "/recommendation", params = {"productId", "limit"}, produces = {"application/json", "application/x-jackson-smile"})
+    Mono<RecommendationPage> getRecommendationPage(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "limit", required = true) int limit,
+            @RequestParam(value = "cursor", required = false) String cursor);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the recommendations of all the products
+     */
+    @GetMapping(path = "/recommendation", params = "productIds", produces = {"application/json", "application/stream+x-jackson-smile"})
+    Flux<Recommendation> getRecommendationsForProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation/statistics?productId=1".
+     *
+     * @param productId Id of the product
+     * @return the number of recommendations of the product, their average rating and the number of recommendations per rating
+     */
+    @GetMapping(path = "/recommendation/statistics", produces = {"application/json", "application/x-jackson-smile"})
+    Mono<RecommendationStatistics> getRecommendationStatistics(@RequestParam(value = "productId", required = true) int productId);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation/statistics?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the recommendation statistics of the products that have recommendations
+     */
+    @GetMapping(path = "/recommendation/statistics", params = "productIds", produces = {"application/json", "application/stream+x-jackson-smile"})
+    Flux<RecommendationStatistics> getRecommendationStatisticsForProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/recommendation?productId=1".
      *
@@ -0,0 +1,18 @@
+package com.pacifique.microservices.api.core.recommendation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class RecommendationStatistics {
+    private int productId;
+    private long count;
+    private double averageRating;
+    /** Number of recommendations per rating */
+    private Map<Integer, Long> ratingHistogram;
+}
@@ -0,0 +1,16 @@
+package com.pacifique.microservices.api.core.review;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor(force = true)
+@Data
+public class ReviewPage {
+    private List<Review> reviews;
+    /** Opaque cursor to get the next page with, null on the last page */
+    private String nextCursor;
+}
@@ -32,9 +32,61 @@ public interface ReviewService {
      */
     @GetMapping(
             value = "/review",
-            produces = "application/json")
+            produces = {"application/json", "application/stream+x-jackson-smile"})
     Flux<Review> getReviews(@RequestParam(value = "productId", required = true) int productId);
 
+    /**
+     * Sample usage: "curl $HOST:$PORT/review?productId=1&limit=10&cursor=MToxMA".
+     *
+     * @param productId Id of the product
+     * @param limit max number of reviews in the page
+     * @param cursor the nextCursor of the previous page, leave out to get the first page
+     * @return a page of the reviews of the product, ordered by reviewId
+     */
+    @GetMapping(
+            value = "/review",
+            params = {"productId", "limit"},
+            produces = {"application/json", "application/x-jackson-smile"})
+    Mono<ReviewPage> getReviewPage(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "limit", required = true) int limit,
+            @RequestParam(value = "cursor", required = false) String cursor);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/review?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the reviews of all the products
+     */
+    @GetMapping(
+            value = "/review",
+            params = "productIds",
+            produces = {"application/json", "application/stream+x-jackson-smile"})
+    Flux<Review> getReviewsForProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/review/statistics?productId=1".
+     *
+     * @param productId Id of the product
+     * @return the number of reviews of the product and its latest review
+     */
+    @GetMapping(
+            value = "/review/statistics",
+            produces = {"application/json", "application/x-jackson-smile"})
+    Mono<ReviewStatistics> getReviewStatistics(@RequestParam(value = "productId", required = true) int productId);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/review/statistics?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the review statistics of the products, with a count of 0 for products without reviews
+     */
+    @GetMapping(
+            value = "/review/statistics",
+            params = "productIds",
+            produces = {"application/json", "application/stream+x-jackson-smile"})
+    Flux<ReviewStatistics> getReviewStatisticsForProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/review?productId=1".
      *
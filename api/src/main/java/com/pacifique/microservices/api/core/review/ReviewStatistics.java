@@ -0,0 +1,19 @@
+package com.pacifique.microservices.api.core.review;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@AllArgsConstructor
+@NoArgsConstructor(force = true)
+@Data
+public class ReviewStatistics {
+    private int productId;
+    private int count;
+    /** The highest reviewId of the product, 0 if it has no reviews */
+    private int latestReviewId;
+    /** When a review of the product was last created, null if it has no reviews */
+    private Instant lastUpdated;
+}
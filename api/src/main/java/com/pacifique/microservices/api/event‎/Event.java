@@ -35,6 +35,13 @@ public class Event <K,T> {
         this.eventCreatedAt = ZonedDateTime.now();
     }
 
+    public Event(T data, K key, Type eventType, ZonedDateTime eventCreatedAt) {
+        this.data = data;
+        this.key = key;
+        this.eventType = eventType;
+        this.eventCreatedAt = eventCreatedAt;
+    }
+
     @JsonSerialize(using= ZonedDateTimeSerializer.class)
     public ZonedDateTime getEventCreatedAt() {
         return eventCreatedAt;
@@ -0,0 +1,107 @@
+package com.pacifique.microservices.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files in JSON format, a baseline and the results of a later run.
+ *
+ * Prints the change of the score, and of the allocated bytes per operation, of each benchmark and parameter
+ * combination found in both files. Exits with status 1 if the score of a benchmark got worse by more than
+ * the given percentage. All benchmarks use the average time mode, i.e. a higher score is worse.
+ *
+ * Usage: BenchmarkComparison baseline.json results.json maxRegressionPercent
+ */
+public class BenchmarkComparison {
+
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    private static class Result {
+        final double score;
+        final double error;
+        final String unit;
+        final Double allocatedBytes;
+
+        Result(double score, double error, String unit, Double allocatedBytes) {
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: BenchmarkComparison baseline.json results.json maxRegressionPercent");
+            System.exit(2);
+        }
+        Map<String, Result> baseline = read(new File(args[0]));
+        Map<String, Result> results = read(new File(args[1]));
+        double maxRegressionPercent = Double.parseDouble(args[2]);
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : new TreeMap<>(results).entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            Result after = entry.getValue();
+            if (before == null) {
+                System.out.printf("%-90s %12.3f %s (new)%n", entry.getKey(), after.score, after.unit);
+                continue;
+            }
+            double change = percentChange(before.score, after.score);
+            // A change within the error margins of the two runs is not a regression
+            boolean regression = change > maxRegressionPercent && after.score - after.error > before.score + before.error;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf("%-90s %12.3f -> %12.3f %s %+7.1f%%%s%s%n", entry.getKey(), before.score, after.score, after.unit, change,
+                    allocationChange(before, after), regression ? "  REGRESSION" : "");
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d benchmarks are more than %.1f%% slower than the baseline%n", regressions, maxRegressionPercent);
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Result> read(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonNode benchmark : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(benchmark.get("benchmark").asText());
+            JsonNode params = benchmark.get("params");
+            if (params != null) {
+                new TreeMap<>(toMap(params)).forEach((name, value) -> key.append(' ').append(name).append('=').append(value));
+            }
+            JsonNode primary = benchmark.get("primaryMetric");
+            JsonNode allocation = benchmark.path("secondaryMetrics").get(ALLOCATION_METRIC);
+            results.put(key.toString(), new Result(
+                    primary.get("score").asDouble(),
+                    primary.path("scoreError").asDouble(0),
+                    primary.get("scoreUnit").asText(),
+                    allocation == null ? null : allocation.get("score").asDouble()));
+        }
+        return results;
+    }
+
+    private static Map<String, String> toMap(JsonNode params) {
+        Map<String, String> map = new LinkedHashMap<>();
+        params.fields().forEachRemaining(field -> map.put(field.getKey(), field.getValue().asText()));
+        return map;
+    }
+
+    private static String allocationChange(Result before, Result after) {
+        if (before.allocatedBytes == null || after.allocatedBytes == null) {
+            return "";
+        }
+        return String.format("  alloc %.0f -> %.0f B/op", before.allocatedBytes, after.allocatedBytes);
+    }
+
+    private static double percentChange(double before, double after) {
+        return before == 0 ? 0 : 100 * (after - before) / before;
+    }
+}
@@ -0,0 +1,115 @@
+package com.pacifique.microservices.benchmarks;
+
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.review.Review;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The JSON and Smile encodings of the core service responses of one composite call, one product, 50 recommendations
+ * and 500 reviews, encoded by the WebFlux codecs of the core services and decoded by the ones of the composite
+ * WebClient. The encoded bytes per call are printed by the setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class DownstreamCodecBenchmark {
+
+    private static final DefaultDataBufferFactory BUFFER_FACTORY = DefaultDataBufferFactory.sharedInstance;
+
+    @Param({"json", "smile"})
+    public String codec;
+
+    private Encoder<Object> encoder;
+    private Decoder<Object> decoder;
+    private MediaType mediaType;
+
+    private final List<Product> products = List.of(new Product(1, "product name", 100, "product-7d9f:8080"));
+    private final List<Recommendation> recommendations = IntStream.rangeClosed(1, 50)
+            .mapToObj(id -> new Recommendation(1, id, "author " + id, id % 5, "recommendation content " + id, "recommendation-5c4b:8080"))
+            .collect(Collectors.toList());
+    private final List<Review> reviews = IntStream.rangeClosed(1, 500)
+            .mapToObj(id -> new Review(1, id, "author " + id, "subject " + id, "a review of the product, number " + id, "review-6f8d:8080"))
+            .collect(Collectors.toList());
+
+    private byte[] encodedProducts;
+    private byte[] encodedRecommendations;
+    private byte[] encodedReviews;
+
+    @Setup
+    public void setup() {
+        if (codec.equals("smile")) {
+            encoder = new Jackson2SmileEncoder();
+            decoder = new Jackson2SmileDecoder();
+            mediaType = MediaType.valueOf("application/stream+x-jackson-smile");
+        } else {
+            encoder = new Jackson2JsonEncoder();
+            decoder = new Jackson2JsonDecoder();
+            mediaType = MediaType.APPLICATION_JSON;
+        }
+        encodedProducts = encode(products, Product.class);
+        encodedRecommendations = encode(recommendations, Recommendation.class);
+        encodedReviews = encode(reviews, Review.class);
+        System.out.printf("%n%s: %d bytes per composite call%n", codec,
+                encodedProducts.length + encodedRecommendations.length + encodedReviews.length);
+    }
+
+    /**
+     * The core services encoding their responses.
+     */
+    @Benchmark
+    public int encode() {
+        return encode(products, Product.class).length
+                + encode(recommendations, Recommendation.class).length
+                + encode(reviews, Review.class).length;
+    }
+
+    /**
+     * The composite decoding the responses.
+     */
+    @Benchmark
+    public int decode() {
+        return decode(encodedProducts, Product.class).size()
+                + decode(encodedRecommendations, Recommendation.class).size()
+                + decode(encodedReviews, Review.class).size();
+    }
+
+    private byte[] encode(List<?> values, Class<?> elementClass) {
+        DataBuffer encoded = DataBufferUtils.join(encoder.encode(Flux.fromIterable(values), BUFFER_FACTORY,
+                ResolvableType.forClass(elementClass), mediaType, Map.of())).block();
+        byte[] bytes = new byte[encoded.readableByteCount()];
+        encoded.read(bytes);
+        DataBufferUtils.release(encoded);
+        return bytes;
+    }
+
+    private List<Object> decode(byte[] bytes, Class<?> elementClass) {
+        return decoder.decode(Flux.just(BUFFER_FACTORY.wrap(bytes)), ResolvableType.forClass(elementClass), mediaType, Map.of())
+                .collectList().block();
+    }
+}
@@ -0,0 +1,64 @@
+package com.pacifique.microservices.benchmarks;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.event‎.Event;
+import com.pacifique.microservices.util.messaging.EventBinaryCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.pacifique.microservices.api.event‎.Event.Type.CREATE;
+
+/**
+ * Serialization of the events sent to the message bus, as JSON like the binders do and with the binary encoding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class EventSerializationBenchmark {
+
+    private ObjectMapper mapper;
+    private JavaType eventType;
+    private Event<Integer, Review> event;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        eventType = mapper.getTypeFactory().constructParametricType(Event.class, Integer.class, Review.class);
+        event = new Event<>(new Review(1, 1, "author", "subject", "review content", null), 1, CREATE);
+        json = mapper.writeValueAsBytes(event);
+        binary = EventBinaryCodec.encode(event);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() throws IOException {
+        return mapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public Event<Integer, Review> deserializeJson() throws IOException {
+        return mapper.readValue(json, eventType);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return EventBinaryCodec.encode(event);
+    }
+
+    @Benchmark
+    public Event<Integer, Object> decodeBinary() {
+        return EventBinaryCodec.decode(binary);
+    }
+}
@@ -0,0 +1,42 @@
+package com.pacifique.microservices.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pacifique.microservices.util.http.HttpErrorInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The error responses of the services, created by the GlobalControllerExceptionHandler for every failed request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class HttpErrorInfoBenchmark {
+
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setup() {
+        mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    }
+
+    @Benchmark
+    public HttpErrorInfo create() {
+        return new HttpErrorInfo(HttpStatus.UNPROCESSABLE_ENTITY, "/review", "Invalid productId: -1");
+    }
+
+    @Benchmark
+    public byte[] createAndSerialize() throws IOException {
+        return mapper.writeValueAsBytes(new HttpErrorInfo(HttpStatus.UNPROCESSABLE_ENTITY, "/review", "Invalid productId: -1"));
+    }
+}
@@ -0,0 +1,78 @@
+package com.pacifique.microservices.benchmarks;
+
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.core.product.persistance.ProductEntity;
+import com.pacifique.microservices.core.product.services.ProductMapper;
+import com.pacifique.microservices.core.recommendation.persistance.RecommendationEntity;
+import com.pacifique.microservices.core.recommendation.services.RecommendationMapper;
+import com.pacifique.microservices.core.review.persistance.ReviewEntity;
+import com.pacifique.microservices.core.review.services.ReviewMapper;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The MapStruct mappers of the core services, between the persistence entities and the API model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    int listSize;
+
+    private final ProductMapper productMapper = Mappers.getMapper(ProductMapper.class);
+    private final RecommendationMapper recommendationMapper = Mappers.getMapper(RecommendationMapper.class);
+    private final ReviewMapper reviewMapper = Mappers.getMapper(ReviewMapper.class);
+
+    private ProductEntity productEntity;
+    private List<RecommendationEntity> recommendationEntities;
+    private List<ReviewEntity> reviewEntities;
+    private List<Review> reviews;
+
+    @Setup
+    public void setup() {
+        productEntity = productMapper.apiToEntity(new Product(1, "product name", 100, null));
+        recommendationEntities = recommendationMapper.apiListToEntityList(IntStream.rangeClosed(1, listSize)
+                .mapToObj(id -> new Recommendation(1, id, "author " + id, id % 5, "recommendation content " + id, null))
+                .collect(Collectors.toList()));
+        reviews = IntStream.rangeClosed(1, listSize)
+                .mapToObj(id -> new Review(1, id, "author " + id, "subject " + id, "review content " + id, null))
+                .collect(Collectors.toList());
+        reviewEntities = reviewMapper.apiListToEntityList(reviews);
+    }
+
+    @Benchmark
+    public Product productEntityToApi() {
+        return productMapper.entityToApi(productEntity);
+    }
+
+    @Benchmark
+    public List<Recommendation> recommendationEntityListToApiList() {
+        return recommendationMapper.entityListToApiList(recommendationEntities);
+    }
+
+    @Benchmark
+    public List<Review> reviewEntityListToApiList() {
+        return reviewMapper.entityListToApiList(reviewEntities);
+    }
+
+    @Benchmark
+    public List<ReviewEntity> reviewApiListToEntityList() {
+        return reviewMapper.apiListToEntityList(reviews);
+    }
+}
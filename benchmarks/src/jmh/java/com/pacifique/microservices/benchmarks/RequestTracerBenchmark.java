@@ -0,0 +1,55 @@
+package com.pacifique.microservices.benchmarks;
+
+import com.pacifique.microservices.util.tracing.RequestTracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * A publisher of a request with the .log operator the services used on every publisher, and with the request
+ * tracer disabled and sampling 1% of the publishers. Run with the gc profiler for the bytes allocated per request.
+ * The request-trace logger logs at INFO, set it to OFF to leave out the cost of writing the sampled traces.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class RequestTracerBenchmark {
+
+    @Param({"1000"})
+    int productId;
+
+    private Mono<Integer> result;
+    private RequestTracer disabled;
+    private RequestTracer sampled;
+
+    @Setup
+    public void setup() {
+        result = Mono.just(1);
+        disabled = new RequestTracer(false, 0.01);
+        sampled = new RequestTracer(true, 0.01);
+    }
+
+    @Benchmark
+    public Integer logOperator() {
+        return result.log(RequestTracerBenchmark.class.getName(), Level.FINE).block();
+    }
+
+    @Benchmark
+    public Integer tracerDisabled() {
+        return disabled.trace("getProduct", productId, result).block();
+    }
+
+    @Benchmark
+    public Integer tracerSampled() {
+        return sampled.trace("getProduct", productId, result).block();
+    }
+}
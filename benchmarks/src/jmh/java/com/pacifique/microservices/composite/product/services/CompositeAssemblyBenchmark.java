@@ -0,0 +1,58 @@
+package com.pacifique.microservices.composite.product.services;
+
+import com.pacifique.microservices.api.composite.product.ProductAggregate;
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.review.Review;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Assembly of a composite product from the product, recommendations and reviews returned by the core services.
+ * In the same package as ProductCompositeServiceImpl, to call its package-private createProductAggregate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class CompositeAssemblyBenchmark {
+
+    @Param({"0", "10", "100"})
+    int recommendationCount;
+
+    @Param({"0", "10", "100", "1000"})
+    int reviewCount;
+
+    private ProductCompositeServiceImpl service;
+    private Product product;
+    private List<Recommendation> recommendations;
+    private List<Review> reviews;
+
+    @Setup
+    public void setup() {
+        // createProductAggregate only uses its arguments
+        service = new ProductCompositeServiceImpl(null, null, null, null, null, null, 200);
+        product = new Product(1, "product name", 100, "product:8080");
+        recommendations = IntStream.rangeClosed(1, recommendationCount)
+                .mapToObj(id -> new Recommendation(1, id, "author " + id, id % 5, "recommendation content " + id, "recommendation:8080"))
+                .collect(Collectors.toList());
+        reviews = IntStream.rangeClosed(1, reviewCount)
+                .mapToObj(id -> new Review(1, id, "author " + id, "subject " + id, "review content " + id, "review:8080"))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public ProductAggregate createProductAggregate() {
+        return service.createProductAggregate(product, recommendations, reviews, List.of(), "composite:8080");
+    }
+}
@@ -0,0 +1,151 @@
+package com.pacifique.microservices.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.event‎.Event;
+import com.pacifique.microservices.util.http.HttpErrorInfo;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory stand-in for the product, recommendation and review services, with the GET endpoints the composite calls
+ * for a composite product. The stores are updated with the events the composite publishes, see StandInEnvironment.
+ */
+class FakeCoreServices implements AutoCloseable {
+
+    private final ConcurrentMap<Integer, Product> products = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Map<Integer, Recommendation>> recommendations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Map<Integer, Review>> reviews = new ConcurrentHashMap<>();
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String serviceAddress;
+
+    private FakeCoreServices(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+        this.serviceAddress = "stand-in:" + server.getAddress().getPort();
+    }
+
+    static FakeCoreServices start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(2 * Runtime.getRuntime().availableProcessors());
+        server.setExecutor(executor);
+        FakeCoreServices services = new FakeCoreServices(server, executor);
+        server.createContext("/product/", services::getProduct);
+        server.createContext("/recommendation", services::getRecommendations);
+        server.createContext("/review", services::getReviews);
+        server.start();
+        return services;
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    void applyProductEvent(Event<Integer, Product> event) {
+        switch (event.getEventType()) {
+            case CREATE -> products.put(event.getKey(), event.getData());
+            case DELETE -> products.remove(event.getKey());
+        }
+    }
+
+    void applyRecommendationEvent(Event<Integer, Recommendation> event) {
+        switch (event.getEventType()) {
+            case CREATE -> recommendations.computeIfAbsent(event.getKey(), productId -> new ConcurrentSkipListMap<>())
+                    .put(event.getData().getRecommendationId(), event.getData());
+            case DELETE -> recommendations.remove(event.getKey());
+        }
+    }
+
+    void applyReviewEvent(Event<Integer, Review> event) {
+        switch (event.getEventType()) {
+            case CREATE -> reviews.computeIfAbsent(event.getKey(), productId -> new ConcurrentSkipListMap<>())
+                    .put(event.getData().getReviewId(), event.getData());
+            case DELETE -> reviews.remove(event.getKey());
+        }
+    }
+
+    private void getProduct(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Integer productId = parseId(path.substring("/product/".length()));
+        Product product = productId == null ? null : products.get(productId);
+        if (product == null) {
+            sendError(exchange, HttpStatus.NOT_FOUND, "No product found for productId: " + productId);
+            return;
+        }
+        send(exchange, 200, new Product(product.getProductId(), product.getName(), product.getWeight(), serviceAddress));
+    }
+
+    private void getRecommendations(HttpExchange exchange) throws IOException {
+        Integer productId = productIdParameter(exchange);
+        if (productId == null) {
+            sendError(exchange, HttpStatus.NOT_FOUND, "Only GET /recommendation?productId= is supported by the stand-in");
+            return;
+        }
+        send(exchange, 200, recommendations.getOrDefault(productId, Map.of()).values().stream()
+                .map(r -> new Recommendation(r.getProductId(), r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), serviceAddress))
+                .toList());
+    }
+
+    private void getReviews(HttpExchange exchange) throws IOException {
+        Integer productId = productIdParameter(exchange);
+        if (productId == null) {
+            sendError(exchange, HttpStatus.NOT_FOUND, "Only GET /review?productId= is supported by the stand-in");
+            return;
+        }
+        send(exchange, 200, reviews.getOrDefault(productId, Map.of()).values().stream()
+                .map(r -> new Review(r.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), serviceAddress))
+                .toList());
+    }
+
+    private static Integer productIdParameter(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null || !query.startsWith("productId=") || query.contains("&")) {
+            return null;
+        }
+        return parseId(query.substring("productId=".length()));
+    }
+
+    private static Integer parseId(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void sendError(HttpExchange exchange, HttpStatus status, String message) throws IOException {
+        send(exchange, status.value(), new HttpErrorInfo(status, exchange.getRequestURI().getPath(), message));
+    }
+
+    private void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,324 @@
+package com.pacifique.microservices.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pacifique.microservices.api.composite.product.ProductAggregate;
+import com.pacifique.microservices.api.composite.product.RecommendationSummary;
+import com.pacifique.microservices.api.composite.product.ReviewSummary;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Load generator for the /product-composite API, for throughput and latency runs that test-em-all.bash is not made for.
+ *
+ * Uses an open model: requests are started at the configured arrival rate whether or not earlier requests have been
+ * answered, like independent users would, and a request's latency is measured from when it was due. A closed loop of
+ * clients that wait for each response would slow down with the service and report the latencies it can keep up with.
+ *
+ * Runs against the URL given with --target, e.g. the gateway, or else against a product composite service started in
+ * this JVM with stand-ins for the message broker and the core services, see StandInEnvironment.
+ *
+ * Prints the latency percentiles of each operation, optionally writes the full distributions as .hgrm files, and exits
+ * with status 1 if the error rate or the 99th percentile latency is above the given limits.
+ */
+public class LoadGenerator {
+
+    private static final int PRELOAD_CONCURRENCY = 64;
+    // The core services create the preloaded products asynchronously, from the events of the composite
+    private static final long PRELOAD_SETTLE_MILLIS = 2000;
+
+    private final LoadTestOptions options;
+    private final String target;
+    private final HttpClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    LoadGenerator(LoadTestOptions options, String target) {
+        this.options = options;
+        this.target = target;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(options.timeoutMs))
+                .executor(Executors.newFixedThreadPool(2 * Runtime.getRuntime().availableProcessors()))
+                .build();
+
+        this.operations = options.mix.keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        int weights = 0;
+        for (int i = 0; i < operations.length; i++) {
+            weights += options.mix.get(operations[i]);
+            cumulativeWeights[i] = weights;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadTestOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        StandInEnvironment standIn = null;
+        String target = options.target;
+        if (target == null) {
+            standIn = StandInEnvironment.start(options.compositeProperties);
+            target = standIn.getBaseUrl();
+        }
+
+        boolean passed;
+        try {
+            passed = new LoadGenerator(options, target).run();
+        } finally {
+            if (standIn != null) {
+                standIn.close();
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    boolean run() throws InterruptedException, IOException {
+        System.out.printf("Load test of %s, %d requests/s with %s arrivals, mix %s%n",
+                target, options.rate, options.arrival.name().toLowerCase(), options.mix);
+
+        if (options.preload) {
+            preload();
+        }
+        if (options.warmupSeconds > 0) {
+            System.out.printf("Warming up for %d s%n", options.warmupSeconds);
+            runPhase(options.warmupSeconds, false);
+        }
+        System.out.printf("Measuring for %d s%n", options.durationSeconds);
+        Map<Operation, OperationStats> stats = runPhase(options.durationSeconds, true);
+
+        printSummary(stats);
+        if (options.hgrmDirectory != null) {
+            writeDistributions(stats, Path.of(options.hgrmDirectory));
+        }
+        return checkLimits(stats);
+    }
+
+    private void preload() throws InterruptedException {
+        Semaphore permits = new Semaphore(PRELOAD_CONCURRENCY);
+        LongAdder failed = new LongAdder();
+        for (int productId = 1; productId <= options.products; productId++) {
+            permits.acquire();
+            client.sendAsync(request(Operation.POST, productId), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (error != null || !Operation.POST.isSuccess(response.statusCode())) {
+                            failed.increment();
+                        }
+                        permits.release();
+                    });
+        }
+        permits.acquire(PRELOAD_CONCURRENCY);
+        System.out.printf("Created %d products, %d requests failed%n", options.products, failed.sum());
+        Thread.sleep(PRELOAD_SETTLE_MILLIS);
+    }
+
+    private Map<Operation, OperationStats> runPhase(int seconds, boolean measured) throws InterruptedException {
+        Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        for (Operation operation : operations) {
+            stats.put(operation, new OperationStats(operation.name()));
+        }
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        if (measured) {
+            long startMillis = System.currentTimeMillis();
+            reporter.scheduleAtFixedRate(() -> printInterval(stats, (System.currentTimeMillis() - startMillis) / 1000),
+                    options.reportIntervalSeconds, options.reportIntervalSeconds, TimeUnit.SECONDS);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        long durationNanos = TimeUnit.SECONDS.toNanos(seconds);
+        double meanIntervalNanos = 1e9 / options.rate;
+        double offsetNanos = 0;
+        while (offsetNanos < durationNanos) {
+            long intendedStart = start + (long) offsetNanos;
+            long delay = intendedStart - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            send(nextOperation(random), random.nextInt(1, options.products + 1), intendedStart, stats);
+            offsetNanos += options.arrival == LoadTestOptions.Arrival.POISSON
+                    ? -Math.log(1 - random.nextDouble()) * meanIntervalNanos
+                    : meanIntervalNanos;
+        }
+
+        awaitInFlight();
+        reporter.shutdown();
+        reporter.awaitTermination(1, TimeUnit.SECONDS);
+        return stats;
+    }
+
+    private void send(Operation operation, int productId, long intendedStart, Map<Operation, OperationStats> stats) {
+        OperationStats operationStats = stats.get(operation);
+        if (inFlight.incrementAndGet() > options.maxInFlight) {
+            inFlight.decrementAndGet();
+            operationStats.recordDropped(TimeUnit.MILLISECONDS.toNanos(options.timeoutMs));
+            return;
+        }
+        client.sendAsync(request(operation, productId), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    long latency = System.nanoTime() - intendedStart;
+                    if (error == null) {
+                        operationStats.recordResponse(operation, response.statusCode(), latency);
+                    } else {
+                        operationStats.recordFailure(latency);
+                    }
+                    inFlight.decrementAndGet();
+                });
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + options.timeoutMs + 1000;
+        while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private Operation nextOperation(ThreadLocalRandom random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        throw new IllegalStateException("No operation for weight " + value);
+    }
+
+    private HttpRequest request(Operation operation, int productId) {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .timeout(Duration.ofMillis(options.timeoutMs))
+                .header("Accept", "application/json");
+        return switch (operation) {
+            case GET -> request.uri(URI.create(target + "/product-composite/" + productId)).GET().build();
+            case DELETE -> request.uri(URI.create(target + "/product-composite/" + productId)).DELETE().build();
+            case POST -> request.uri(URI.create(target + "/product-composite"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(createBody(productId)))
+                    .build();
+        };
+    }
+
+    private byte[] createBody(int productId) {
+        List<RecommendationSummary> recommendations = IntStream.rangeClosed(1, options.recommendations)
+                .mapToObj(id -> new RecommendationSummary(id, "author " + id, id % 6, "recommendation content " + id))
+                .collect(Collectors.toList());
+        List<ReviewSummary> reviews = IntStream.rangeClosed(1, options.reviews)
+                .mapToObj(id -> new ReviewSummary(id, "author " + id, "subject " + id, "review content " + id))
+                .collect(Collectors.toList());
+        try {
+            return mapper.writeValueAsBytes(new ProductAggregate(productId, "product " + productId, productId % 1000,
+                    recommendations, reviews, null));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void printInterval(Map<Operation, OperationStats> stats, long elapsedSeconds) {
+        for (OperationStats operationStats : stats.values()) {
+            Histogram interval = operationStats.nextInterval();
+            System.out.printf("%5ds %-6s %9.1f req/s  p50 %9.2f  p99 %9.2f  max %9.2f ms  errors %d  dropped %d%n",
+                    elapsedSeconds, operationStats.getName(),
+                    (double) interval.getTotalCount() / options.reportIntervalSeconds,
+                    millis(interval.getValueAtPercentile(50)), millis(interval.getValueAtPercentile(99)),
+                    millis(interval.getMaxValue()), operationStats.getErrors(), operationStats.getDropped());
+        }
+    }
+
+    private void printSummary(Map<Operation, OperationStats> stats) {
+        System.out.printf("%n%-6s %9s %9s %9s %6s %6s %7s %8s %9s %9s %9s %9s %9s%n", "", "requests", "req/s", "ok", "4xx", "5xx",
+                "failed", "dropped", "p50", "p90", "p99", "p99.9", "max (ms)");
+        Histogram all = new Histogram(3);
+        long succeeded = 0, clientErrors = 0, serverErrors = 0, failed = 0, dropped = 0;
+        for (OperationStats operationStats : stats.values()) {
+            // The latencies since the last progress line
+            operationStats.nextInterval();
+            printSummaryLine(operationStats.getName(), operationStats.getTotal(), operationStats.getSucceeded(),
+                    operationStats.getClientErrors(), operationStats.getServerErrors(), operationStats.getFailed(), operationStats.getDropped());
+            all.add(operationStats.getTotal());
+            succeeded += operationStats.getSucceeded();
+            clientErrors += operationStats.getClientErrors();
+            serverErrors += operationStats.getServerErrors();
+            failed += operationStats.getFailed();
+            dropped += operationStats.getDropped();
+        }
+        printSummaryLine("ALL", all, succeeded, clientErrors, serverErrors, failed, dropped);
+    }
+
+    private void printSummaryLine(String name, Histogram latencies, long succeeded, long clientErrors, long serverErrors, long failed, long dropped) {
+        // The dropped requests are recorded in the latencies, at the response timeout
+        long requests = latencies.getTotalCount();
+        System.out.printf("%-6s %9d %9.1f %9d %6d %6d %7d %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, requests,
+                (double) requests / options.durationSeconds, succeeded, clientErrors, serverErrors, failed, dropped,
+                millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+                millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)),
+                millis(latencies.getMaxValue()));
+    }
+
+    private void writeDistributions(Map<Operation, OperationStats> stats, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (OperationStats operationStats : stats.values()) {
+            Path file = directory.resolve(operationStats.getName().toLowerCase() + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+                // In milliseconds, the histograms are recorded in microseconds
+                operationStats.getTotal().outputPercentileDistribution(out, 1000.0);
+            }
+            System.out.printf("Wrote the latency distribution of %s to %s%n", operationStats.getName(), file);
+        }
+    }
+
+    private boolean checkLimits(Map<Operation, OperationStats> stats) {
+        boolean passed = true;
+        long requests = 0, errors = 0;
+        for (OperationStats operationStats : stats.values()) {
+            requests += operationStats.getTotal().getTotalCount();
+            errors += operationStats.getErrors();
+            double p99 = millis(operationStats.getTotal().getValueAtPercentile(99));
+            if (options.maxP99Ms != null && p99 > options.maxP99Ms) {
+                System.out.printf("FAILED: the p99 latency of %s is %.2f ms, more than %d ms%n", operationStats.getName(), p99, options.maxP99Ms);
+                passed = false;
+            }
+        }
+        double errorPercent = requests == 0 ? 0 : 100.0 * errors / requests;
+        if (errorPercent > options.maxErrorPercent) {
+            System.out.printf("FAILED: %.2f%% of the requests failed, more than %.2f%%%n", errorPercent, options.maxErrorPercent);
+            passed = false;
+        }
+        return passed;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,116 @@
+package com.pacifique.microservices.loadtest;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The options of a load test run, given as --name=value arguments.
+ *
+ * Options that start with "composite." are passed on, without the prefix, to the stand-in composite service,
+ * e.g. --composite.app.aggregate-cache.enabled=false.
+ */
+class LoadTestOptions {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: LoadGenerator [--name=value]...",
+            "  --target=URL               base URL of the gateway or composite, default: a stand-in composite in this JVM",
+            "  --rate=N                   requests per second, started on schedule regardless of the responses (default 100)",
+            "  --arrival=constant|poisson spacing of the requests (default poisson)",
+            "  --duration=S               seconds to measure (default 60)",
+            "  --warmup=S                 seconds to run before measuring (default 10)",
+            "  --mix=get:N,post:N,delete:N relative weights of the operations (default get:80,post:15,delete:5)",
+            "  --products=N               product ids used, from 1 to N (default 1000)",
+            "  --preload=true|false       creates the products before the run (default true)",
+            "  --recommendations=N        recommendations per created product (default 3)",
+            "  --reviews=N                reviews per created product (default 3)",
+            "  --maxInFlight=N            requests in flight before new ones are dropped, and recorded at the timeout (default 10000)",
+            "  --timeoutMs=N              response timeout (default 10000)",
+            "  --reportInterval=S         seconds between the progress lines (default 5)",
+            "  --hgrm=DIR                 writes the latency distribution of each operation as DIR/<operation>.hgrm",
+            "  --maxErrorPercent=P        fails the run if more requests fail (default 1)",
+            "  --maxP99Ms=N               fails the run if the 99th percentile latency of an operation is higher",
+            "  --composite.<property>=V   sets a property of the stand-in composite");
+
+    enum Arrival {
+        CONSTANT,
+        POISSON
+    }
+
+    String target;
+    int rate = 100;
+    Arrival arrival = Arrival.POISSON;
+    int durationSeconds = 60;
+    int warmupSeconds = 10;
+    Map<Operation, Integer> mix = parseMix("get:80,post:15,delete:5");
+    int products = 1000;
+    boolean preload = true;
+    int recommendations = 3;
+    int reviews = 3;
+    int maxInFlight = 10_000;
+    int timeoutMs = 10_000;
+    int reportIntervalSeconds = 5;
+    String hgrmDirectory;
+    double maxErrorPercent = 1;
+    Long maxP99Ms;
+    final Map<String, String> compositeProperties = new LinkedHashMap<>();
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            if (name.startsWith("composite.")) {
+                options.compositeProperties.put(name.substring("composite.".length()), value);
+                continue;
+            }
+            switch (name) {
+                case "target" -> options.target = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                case "rate" -> options.rate = positive(name, value);
+                case "arrival" -> options.arrival = Arrival.valueOf(value.toUpperCase());
+                case "duration" -> options.durationSeconds = positive(name, value);
+                case "warmup" -> options.warmupSeconds = Integer.parseInt(value);
+                case "mix" -> options.mix = parseMix(value);
+                case "products" -> options.products = positive(name, value);
+                case "preload" -> options.preload = Boolean.parseBoolean(value);
+                case "recommendations" -> options.recommendations = Integer.parseInt(value);
+                case "reviews" -> options.reviews = Integer.parseInt(value);
+                case "maxInFlight" -> options.maxInFlight = positive(name, value);
+                case "timeoutMs" -> options.timeoutMs = positive(name, value);
+                case "reportInterval" -> options.reportIntervalSeconds = positive(name, value);
+                case "hgrm" -> options.hgrmDirectory = value;
+                case "maxErrorPercent" -> options.maxErrorPercent = Double.parseDouble(value);
+                case "maxP99Ms" -> options.maxP99Ms = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+        return options;
+    }
+
+    private static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : value.split(",")) {
+            String[] weight = part.split(":");
+            if (weight.length != 2) {
+                throw new IllegalArgumentException("Invalid mix: " + value);
+            }
+            mix.put(Operation.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("Invalid mix, no operation has a weight: " + value);
+        }
+        return mix;
+    }
+
+    private static int positive(String name, String value) {
+        int number = Integer.parseInt(value);
+        if (number <= 0) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+        return number;
+    }
+}
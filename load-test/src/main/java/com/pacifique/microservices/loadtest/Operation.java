@@ -0,0 +1,23 @@
+package com.pacifique.microservices.loadtest;
+
+/**
+ * The requests of the load test, on the /product-composite endpoints.
+ */
+enum Operation {
+    GET(200),
+    POST(202),
+    DELETE(202);
+
+    private final int expectedStatus;
+
+    Operation(int expectedStatus) {
+        this.expectedStatus = expectedStatus;
+    }
+
+    /**
+     * A product that was deleted by an earlier request is not found, which is not an error of the service under test.
+     */
+    boolean isSuccess(int status) {
+        return status == expectedStatus || (this == GET && status == 404);
+    }
+}
@@ -0,0 +1,102 @@
+package com.pacifique.microservices.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of the requests of one operation.
+ *
+ * Latencies are recorded in microseconds from the time a request was scheduled to start, not from when it was sent,
+ * so a stalled client or service does not hide the waiting time of the requests that were due in the meantime.
+ */
+class OperationStats {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final String name;
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+    private Histogram interval;
+
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder clientErrors = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    OperationStats(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void recordResponse(Operation operation, int status, long latencyNanos) {
+        recorder.recordValue(latencyNanos / 1000);
+        if (operation.isSuccess(status)) {
+            succeeded.increment();
+        } else if (status >= 500) {
+            serverErrors.increment();
+        } else {
+            clientErrors.increment();
+        }
+    }
+
+    /**
+     * Timeouts and I/O errors, the request got no response.
+     */
+    void recordFailure(long latencyNanos) {
+        recorder.recordValue(latencyNanos / 1000);
+        failed.increment();
+    }
+
+    /**
+     * The request was not sent, there were too many requests in flight. Recorded at the response timeout, as if it had
+     * timed out, so the percentiles don't leave out the requests the service could not keep up with.
+     */
+    void recordDropped(long timeoutNanos) {
+        recorder.recordValue(timeoutNanos / 1000);
+        dropped.increment();
+    }
+
+    /**
+     * Returns the latencies recorded since the previous call, and adds them to the total.
+     * Only called by one thread at a time.
+     */
+    Histogram nextInterval() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        return interval;
+    }
+
+    Histogram getTotal() {
+        return total;
+    }
+
+    long getSucceeded() {
+        return succeeded.sum();
+    }
+
+    long getClientErrors() {
+        return clientErrors.sum();
+    }
+
+    long getServerErrors() {
+        return serverErrors.sum();
+    }
+
+    long getFailed() {
+        return failed.sum();
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    long getErrors() {
+        return getClientErrors() + getServerErrors() + getFailed() + getDropped();
+    }
+}
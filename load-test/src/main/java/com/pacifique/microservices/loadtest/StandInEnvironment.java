@@ -0,0 +1,183 @@
+package com.pacifique.microservices.loadtest;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.event‎.Event;
+import com.pacifique.microservices.composite.product.ProductCompositeServiceApplication;
+import com.pacifique.microservices.util.messaging.EventBinaryCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.cloud.stream.binder.test.InputDestination;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.cloud.stream.binding.BindingService;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.Message;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the product composite service in this JVM against local stand-ins for its dependencies: the test binder of
+ * Spring Cloud Stream instead of RabbitMQ or Kafka, and FakeCoreServices instead of the core services and their databases.
+ *
+ * The events the composite publishes are read from the test binder and applied to the fake stores, so products created
+ * and deleted through the composite are found, or not, by later requests, like with the real services. The applied
+ * events are sent back to the composite on the accepted-events destinations, like the core services do.
+ */
+class StandInEnvironment implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(StandInEnvironment.class);
+
+    private static final long POLL_INTERVAL_MILLIS = 10;
+
+    private final FakeCoreServices coreServices;
+    private final ConfigurableApplicationContext composite;
+    private final OutputDestination events;
+    private final InputDestination acceptedEvents;
+    private final BindingService bindingService;
+    private final BindingServiceProperties bindingProperties;
+    // The destinations the composite has bound a producer to, only read by the event pump
+    private final Set<String> boundDestinations = new HashSet<>();
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final Thread eventPump;
+    private volatile boolean running = true;
+
+    private StandInEnvironment(FakeCoreServices coreServices, ConfigurableApplicationContext composite) {
+        this.coreServices = coreServices;
+        this.composite = composite;
+        this.events = composite.getBean(OutputDestination.class);
+        this.acceptedEvents = composite.getBean(InputDestination.class);
+        this.bindingService = composite.getBean(BindingService.class);
+        this.bindingProperties = composite.getBean(BindingServiceProperties.class);
+        this.eventPump = new Thread(this::pumpEvents, "stand-in-event-pump");
+        this.eventPump.setDaemon(true);
+        this.eventPump.start();
+    }
+
+    /**
+     * @param compositeProperties properties of the composite, in addition to or overriding the ones of the stand-in
+     */
+    static StandInEnvironment start(Map<String, String> compositeProperties) throws IOException {
+        FakeCoreServices coreServices = FakeCoreServices.start();
+        String coreServicesUri = "http://localhost:" + coreServices.getPort();
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("eureka.client.enabled", "false");
+        properties.put("spring.main.allow-bean-definition-overriding", "true");
+        // Resolved by the load balanced WebClient without Eureka
+        for (String service : new String[]{"product", "recommendation", "review"}) {
+            properties.put("spring.cloud.discovery.client.simple.instances." + service + "[0].uri", coreServicesUri);
+        }
+        properties.put("app.outbox.directory", "build/outbox/stand-in");
+        properties.put("app.outbox.publisherConfirms", "false");
+        // Keeps the output of the load generator readable
+        properties.put("logging.level.com.pacifique", "WARN");
+        properties.putAll(compositeProperties);
+
+        SpringApplication application = new SpringApplication(ProductCompositeServiceApplication.class, TestChannelBinderConfiguration.class);
+        ConfigurableApplicationContext composite = application.run(properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new));
+
+        StandInEnvironment environment = new StandInEnvironment(coreServices, composite);
+        LOG.info("Started the stand-in composite on {}, with the fake core services on {}", environment.getBaseUrl(), coreServicesUri);
+        return environment;
+    }
+
+    String getBaseUrl() {
+        return "http://localhost:" + ((WebServerApplicationContext) composite).getWebServer().getPort();
+    }
+
+    private void pumpEvents() {
+        JavaType productEvent = eventType(Product.class);
+        JavaType recommendationEvent = eventType(Recommendation.class);
+        JavaType reviewEvent = eventType(Review.class);
+        while (running) {
+            try {
+                boolean received = false;
+                Message<byte[]> message;
+                while ((message = receive("products")) != null) {
+                    coreServices.applyProductEvent(decode(message.getPayload(), productEvent));
+                    acceptedEvents.send(message, "products.accepted");
+                    received = true;
+                }
+                while ((message = receive("recommendations")) != null) {
+                    coreServices.applyRecommendationEvent(decode(message.getPayload(), recommendationEvent));
+                    acceptedEvents.send(message, "recommendations.accepted");
+                    received = true;
+                }
+                while ((message = receive("reviews")) != null) {
+                    coreServices.applyReviewEvent(decode(message.getPayload(), reviewEvent));
+                    acceptedEvents.send(message, "reviews.accepted");
+                    received = true;
+                }
+                if (!received) {
+                    Thread.sleep(POLL_INTERVAL_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException | IOException e) {
+                LOG.warn("Failed to apply an event to the fake core services: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * The next event published to the destination, or null if there is none yet.
+     */
+    private Message<byte[]> receive(String destination) {
+        return isBound(destination) ? events.receive(0, destination) : null;
+    }
+
+    /**
+     * StreamBridge binds a producer on the first event the composite publishes to a destination. The test binder has
+     * no queue for the destination before then.
+     */
+    private boolean isBound(String destination) {
+        if (boundDestinations.contains(destination)) {
+            return true;
+        }
+        for (String binding : bindingService.getProducerBindingNames()) {
+            if (destination.equals(bindingProperties.getBindingDestination(binding))) {
+                boundDestinations.add(destination);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Event<Integer, T> decode(byte[] payload, JavaType type) throws IOException {
+        if (EventBinaryCodec.isBinary(payload)) {
+            return (Event<Integer, T>) (Event<Integer, ?>) EventBinaryCodec.decode(payload);
+        }
+        return mapper.readValue(payload, type);
+    }
+
+    private JavaType eventType(Class<?> dataType) {
+        return mapper.getTypeFactory().constructParametricType(Event.class, Integer.class, dataType);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        eventPump.interrupt();
+        composite.close();
+        coreServices.close();
+    }
+}
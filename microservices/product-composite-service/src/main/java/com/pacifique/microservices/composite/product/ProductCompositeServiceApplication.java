@@ -1,5 +1,6 @@
 package com.pacifique.microservices.composite.product;
 
+import com.pacifique.microservices.util.reactor.BlockingSchedulers;
 import io.swagger.v3.oas.models.ExternalDocumentation;
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.info.Contact;
@@ -16,7 +17,6 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
 
 @SpringBootApplication
 @ComponentScan("com.pacifique")
@@ -79,9 +79,9 @@ public class ProductCompositeServiceApplication {
 
 
     @Bean
-    public Scheduler publishEventScheduler() {
+    public Scheduler publishEventScheduler(BlockingSchedulers blockingSchedulers) {
         LOG.info("Creates a messagingScheduler with connectionPoolSize = {}", threadPoolSize);
-        return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize, "publish-pool");
+        return blockingSchedulers.newScheduler("publish-pool", threadPoolSize, taskQueueSize);
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,46 @@
+package com.pacifique.microservices.composite.product.services;
+
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.event‎.Event;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.function.Consumer;
+
+/**
+ * Consumers of the events the core services have stored, published on the products.accepted,
+ * recommendations.accepted and reviews.accepted destinations.
+ *
+ * The bindings have no group, so every instance gets all accepted events and invalidates its cached aggregate of
+ * the product once the change is applied, instead of when the composite appends the event to its outbox. When the
+ * read model is enabled, the events are applied to it first.
+ */
+@Configuration
+public class AcceptedEventsConfig {
+
+    @Bean
+    public Consumer<Event<Integer, Product>> productAccepted(ProductReadModel readModel, ProductAggregateCache aggregateCache) {
+        return event -> {
+            readModel.applyProductEvent(event);
+            aggregateCache.invalidate(event.getKey());
+        };
+    }
+
+    @Bean
+    public Consumer<Event<Integer, Recommendation>> recommendationAccepted(ProductReadModel readModel, ProductAggregateCache aggregateCache) {
+        return event -> {
+            readModel.applyRecommendationEvent(event);
+            aggregateCache.invalidate(event.getKey());
+        };
+    }
+
+    @Bean
+    public Consumer<Event<Integer, Review>> reviewAccepted(ProductReadModel readModel, ProductAggregateCache aggregateCache) {
+        return event -> {
+            readModel.applyReviewEvent(event);
+            aggregateCache.invalidate(event.getKey());
+        };
+    }
+}
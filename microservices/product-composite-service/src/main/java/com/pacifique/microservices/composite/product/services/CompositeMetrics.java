@@ -0,0 +1,185 @@
+package com.pacifique.microservices.composite.product.services;
+
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Timers of the calls to the core services, of the event publishing and of the fan-out for a composite product, and
+ * a counter of where the composite products are read from.
+ *
+ * All timers publish percentile histograms, for the percentiles across instances, and the 50th, 95th and 99th
+ * percentiles of the instance, on /actuator/prometheus and /actuator/metrics.
+ */
+@Component
+public class CompositeMetrics {
+
+    public static final String DOWNSTREAM_CALL = "composite.downstream.call";
+    public static final String EVENT_PUBLISH = "composite.event.publish";
+    public static final String FAN_OUT = "composite.product.fanout";
+    public static final String FAN_OUT_DEPENDENCY = "composite.product.fanout.dependency";
+    public static final String PRODUCT_READ = "composite.product.read";
+
+    public static final String READ_MODEL = "read-model";
+    public static final String AGGREGATE_CACHE = "aggregate-cache";
+    public static final String CORE_SERVICES = "core-services";
+
+    public static final String COMPOSITE_BINDING = "composite";
+
+    private final Meter.MeterProvider<Timer> downstreamCalls;
+    private final Meter.MeterProvider<Timer> eventPublishes;
+    private final Meter.MeterProvider<Timer> fanOuts;
+    private final Meter.MeterProvider<Timer> fanOutDependencies;
+    private final Meter.MeterProvider<Counter> productReads;
+
+    @Autowired
+    public CompositeMetrics(MeterRegistry meterRegistry) {
+        this.downstreamCalls = timer(DOWNSTREAM_CALL, "Calls to the core services, including hedged requests, as seen by the composite")
+                .withRegistry(meterRegistry);
+        this.eventPublishes = timer(EVENT_PUBLISH, "Storing events in the outbox, until they are on disk")
+                .withRegistry(meterRegistry);
+        this.fanOuts = timer(FAN_OUT, "Fan-out to the core services for a composite product")
+                .withRegistry(meterRegistry);
+        this.fanOutDependencies = timer(FAN_OUT_DEPENDENCY,
+                "Time from the start of a fan-out until the call to a core service ended, critical if it ended last")
+                .withRegistry(meterRegistry);
+        this.productReads = Counter.builder(PRODUCT_READ)
+                .description("Composite products read, from the read model, the aggregate cache or the core services")
+                .withRegistry(meterRegistry);
+    }
+
+    private static Timer.Builder timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram();
+    }
+
+    /**
+     * Times a call to a core service, tagged with the service, the API method, the outcome and the HTTP status.
+     * Must be applied before the errors are mapped to the API exceptions.
+     */
+    public <T> Mono<T> timeCall(String service, String method, Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call
+                    .doOnSuccess(result -> recordCall(service, method, null, start))
+                    .doOnError(ex -> recordCall(service, method, ex, start))
+                    .doOnCancel(() -> recordCall(service, method, "CANCELLED", "NONE", start));
+        });
+    }
+
+    public <T> Flux<T> timeCall(String service, String method, Flux<T> call) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return call
+                    .doOnComplete(() -> recordCall(service, method, null, start))
+                    .doOnError(ex -> recordCall(service, method, ex, start))
+                    .doOnCancel(() -> recordCall(service, method, "CANCELLED", "NONE", start));
+        });
+    }
+
+    /**
+     * Times storing events in the outbox, tagged with the binding of the event, or composite for the events of a
+     * composite product appended together, and the outcome.
+     */
+    public void timePublish(String binding, Runnable publish) {
+        long start = System.nanoTime();
+        String outcome = "ERROR";
+        try {
+            publish.run();
+            outcome = "SUCCESS";
+        } finally {
+            eventPublishes.withTags("binding", binding, "outcome", outcome)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Counts a composite product read, tagged with its source: read-model, aggregate-cache or core-services.
+     */
+    public void countProductRead(String source) {
+        productReads.withTags("source", source).increment();
+    }
+
+    /**
+     * Starts timing a fan-out to the core services, the fan-out must be subscribed to right away.
+     */
+    public FanOut startFanOut() {
+        return new FanOut(System.nanoTime());
+    }
+
+    /**
+     * Records when each call of a fan-out ended. When the fan-out ends, the time until then is recorded for each call
+     * that has ended, with the call that ended last tagged as critical: it decided the response time of the composite.
+     */
+    public class FanOut {
+        private final long start;
+        private final Map<String, Long> ended = new ConcurrentHashMap<>();
+
+        private FanOut(long start) {
+            this.start = start;
+        }
+
+        /**
+         * Must be applied before errors are handled, a call ends with its first signal.
+         * The end is recorded before the signal is passed on, i.e. before the fan-out can end.
+         */
+        public <T> Mono<T> track(String service, Mono<T> call) {
+            return call.doOnEach(signal -> ended.putIfAbsent(service, System.nanoTime()));
+        }
+
+        public <T> Mono<T> timed(Mono<T> fanOut) {
+            return fanOut
+                    .doOnSuccess(result -> record("SUCCESS"))
+                    .doOnError(ex -> record("ERROR"))
+                    .doOnCancel(() -> record("CANCELLED"));
+        }
+
+        private void record(String outcome) {
+            long now = System.nanoTime();
+            fanOuts.withTags("outcome", outcome).record(now - start, TimeUnit.NANOSECONDS);
+            String critical = ended.entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(null);
+            ended.forEach((service, end) -> fanOutDependencies
+                    .withTags("service", service, "critical", String.valueOf(service.equals(critical)))
+                    .record(end - start, TimeUnit.NANOSECONDS));
+        }
+    }
+
+    private void recordCall(String service, String method, Throwable error, long start) {
+        if (error == null) {
+            // The response bodies are only read from responses with a 2xx status
+            recordCall(service, method, "SUCCESS", "2xx", start);
+        } else if (error instanceof WebClientResponseException response) {
+            recordCall(service, method, response.getStatusCode().is4xxClientError() ? "CLIENT_ERROR" : "SERVER_ERROR",
+                    String.valueOf(response.getStatusCode().value()), start);
+        } else if (error instanceof TimeoutException) {
+            recordCall(service, method, "TIMEOUT", "NONE", start);
+        } else if (error instanceof CallNotPermittedException || error instanceof BulkheadFullException) {
+            recordCall(service, method, "REJECTED", "NONE", start);
+        } else if (error instanceof WebClientRequestException) {
+            recordCall(service, method, "IO_ERROR", "NONE", start);
+        } else {
+            recordCall(service, method, "ERROR", "NONE", start);
+        }
+    }
+
+    private void recordCall(String service, String method, String outcome, String status, long start) {
+        downstreamCalls.withTags("service", service, "method", method, "outcome", outcome, "status", status)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,54 @@
+package com.pacifique.microservices.composite.product.services;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+public class DownstreamCallPolicies {
+    private static final Logger LOG = LoggerFactory.getLogger(DownstreamCallPolicies.class);
+
+    private final DownstreamCallPolicy product;
+    private final DownstreamCallPolicy recommendation;
+    private final DownstreamCallPolicy review;
+
+    @Autowired
+    public DownstreamCallPolicies(
+            @Value("${app.downstream.product.timeoutMs:2000}") Integer productTimeoutMs,
+            @Value("${app.downstream.recommendation.timeoutMs:1000}") Integer recommendationTimeoutMs,
+            @Value("${app.downstream.review.timeoutMs:1000}") Integer reviewTimeoutMs,
+            @Value("${app.downstream.hedge.enabled:true}") boolean hedgeEnabled,
+            @Value("${app.downstream.hedge.percentile:0.95}") Double hedgePercentile,
+            @Value("${app.downstream.hedge.minDelayMs:20}") Integer minHedgeDelayMs,
+            CircuitBreakerRegistry circuitBreakerRegistry,
+            BulkheadRegistry bulkheadRegistry
+    ) {
+        LOG.info("Creates downstream call policies with timeouts product = {} ms, recommendation = {} ms, review = {} ms, hedging enabled = {} at percentile {}",
+                productTimeoutMs, recommendationTimeoutMs, reviewTimeoutMs, hedgeEnabled, hedgePercentile);
+        Duration minHedgeDelay = Duration.ofMillis(minHedgeDelayMs);
+        this.product = new DownstreamCallPolicy("product", Duration.ofMillis(productTimeoutMs), hedgeEnabled, hedgePercentile, minHedgeDelay,
+                circuitBreakerRegistry.circuitBreaker("product"), bulkheadRegistry.bulkhead("product"));
+        this.recommendation = new DownstreamCallPolicy("recommendation", Duration.ofMillis(recommendationTimeoutMs), hedgeEnabled, hedgePercentile, minHedgeDelay,
+                circuitBreakerRegistry.circuitBreaker("recommendation"), bulkheadRegistry.bulkhead("recommendation"));
+        this.review = new DownstreamCallPolicy("review", Duration.ofMillis(reviewTimeoutMs), hedgeEnabled, hedgePercentile, minHedgeDelay,
+                circuitBreakerRegistry.circuitBreaker("review"), bulkheadRegistry.bulkhead("review"));
+    }
+
+    public DownstreamCallPolicy product() {
+        return product;
+    }
+
+    public DownstreamCallPolicy recommendation() {
+        return recommendation;
+    }
+
+    public DownstreamCallPolicy review() {
+        return review;
+    }
+}
@@ -0,0 +1,145 @@
+package com.pacifique.microservices.composite.product.services;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Deadline, hedging, circuit breaker and bulkhead policy for the read calls to one core service.
+ *
+ * Every call gets a deadline for the complete response. When hedging is enabled, a second
+ * request is sent if the first one has not answered within the configured latency percentile
+ * of the recent calls, and the first request to answer wins. Since the WebClient is load
+ * balanced with round-robin over the Eureka instances, the hedged request goes to another
+ * instance than the first one whenever the service has more than one instance.
+ *
+ * The circuit breaker and the bulkhead reject calls immediately, with a CallNotPermittedException
+ * or a BulkheadFullException, while the service is failing or when too many calls are in flight.
+ * The bulkhead must be configured without any wait duration, it is not allowed to block the event loop.
+ */
+public class DownstreamCallPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(DownstreamCallPolicy.class);
+
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int MIN_SAMPLES = 100;
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    private final String serviceName;
+    private final Duration timeout;
+    private final boolean hedgeEnabled;
+    private final double hedgePercentile;
+    private final long minHedgeDelayNanos;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private long sampleCount = 0;
+    private volatile long hedgeDelayNanos = -1;
+
+    public DownstreamCallPolicy(String serviceName, Duration timeout, boolean hedgeEnabled, double hedgePercentile, Duration minHedgeDelay,
+                                CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+        this.serviceName = serviceName;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.timeout = timeout;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgePercentile = hedgePercentile;
+        this.minHedgeDelayNanos = minHedgeDelay.toNanos();
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public <T> Mono<T> apply(Mono<T> request) {
+        return hedge(timed(request)).timeout(timeout, Mono.error(() -> timeoutException()))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead));
+    }
+
+    public <T> Flux<T> apply(Flux<T> request) {
+        return Flux.defer(() -> {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            return hedge(timed(request)).timeout(
+                    Mono.delay(timeout),
+                    item -> Mono.delay(Duration.ofNanos(Math.max(0, deadline - System.nanoTime()))),
+                    Flux.error(this::timeoutException));
+        })
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead));
+    }
+
+    /**
+     * @return the current hedge delay, or null if hedging is disabled or too few calls are recorded
+     */
+    public Duration currentHedgeDelay() {
+        long delay = hedgeDelayNanos;
+        return (!hedgeEnabled || delay < 0) ? null : Duration.ofNanos(delay);
+    }
+
+    private <T> Mono<T> hedge(Mono<T> request) {
+        Duration delay = currentHedgeDelay();
+        if (delay == null) {
+            return request;
+        }
+        return Mono.firstWithSignal(request, Mono.delay(delay)
+                .doOnNext(t -> LOG.debug("Sends a hedged request to {} after {} ms", serviceName, delay.toMillis()))
+                .then(request));
+    }
+
+    private <T> Flux<T> hedge(Flux<T> request) {
+        Duration delay = currentHedgeDelay();
+        if (delay == null) {
+            return request;
+        }
+        return Flux.firstWithSignal(request, Mono.delay(delay)
+                .doOnNext(t -> LOG.debug("Sends a hedged request to {} after {} ms", serviceName, delay.toMillis()))
+                .thenMany(request));
+    }
+
+    private <T> Mono<T> timed(Mono<T> request) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return request.doOnSuccess(r -> record(System.nanoTime() - start));
+        });
+    }
+
+    private <T> Flux<T> timed(Flux<T> request) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return request.doOnComplete(() -> record(System.nanoTime() - start));
+        });
+    }
+
+    private void record(long latencyNanos) {
+        if (!hedgeEnabled) {
+            return;
+        }
+        long[] snapshot = null;
+        synchronized (samples) {
+            samples[(int) (sampleCount % SAMPLE_SIZE)] = latencyNanos;
+            sampleCount++;
+            if (sampleCount >= MIN_SAMPLES && sampleCount % RECOMPUTE_INTERVAL == 0) {
+                snapshot = Arrays.copyOf(samples, (int) Math.min(sampleCount, SAMPLE_SIZE));
+            }
+        }
+        if (snapshot != null) {
+            Arrays.sort(snapshot);
+            long percentileValue = snapshot[(int) Math.min(snapshot.length - 1, Math.ceil(hedgePercentile * snapshot.length) - 1)];
+            hedgeDelayNanos = Math.max(minHedgeDelayNanos, percentileValue);
+        }
+    }
+
+    private TimeoutException timeoutException() {
+        return new TimeoutException("No response from " + serviceName + " within " + timeout.toMillis() + " ms");
+    }
+}
@@ -0,0 +1,313 @@
+package com.pacifique.microservices.composite.product.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pacifique.microservices.api.event‎.Event;
+import com.pacifique.microservices.util.messaging.EventBinaryCodec;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Durable outbox for the events published by the composite service.
+ *
+ * Events are appended to a file-backed {@link OutboxLog} and are on disk when append returns, so the
+ * caller can be answered without waiting for the message broker. The events of one request can be
+ * appended together, with one write to the log.
+ *
+ * A relay thread reads the events from the log in micro-batches, of up to batchSize events or the
+ * events appended within lingerMs. The events of a batch are sent grouped per binding. The relay does
+ * not wait for the publisher confirms of a batch before it sends the next one, up to maxInFlightBatches
+ * batches are waiting for their confirms. Batches are committed in the log in order, once all their
+ * events are confirmed. If an event is not confirmed, the relay sends all events after the last
+ * committed batch again, i.e. the events are delivered at least once.
+ *
+ * Events are stored and sent as JSON, or with the compact {@link EventBinaryCodec} if binaryEvents is set.
+ * The content type of each message follows the encoding of its stored event, so events stored before the
+ * encoding was changed are still sent with the right content type.
+ */
+@Component
+public class EventOutbox {
+    private static final Logger LOG = LoggerFactory.getLogger(EventOutbox.class);
+
+    /**
+     * An event to append to the outbox, together with the binding to send it to.
+     */
+    public static class OutboxEvent {
+        private final String bindingName;
+        private final Event<Integer, ?> event;
+
+        public OutboxEvent(String bindingName, Event<Integer, ?> event) {
+            this.bindingName = bindingName;
+            this.event = event;
+        }
+
+        public String getBindingName() {
+            return bindingName;
+        }
+
+        public Event<Integer, ?> getEvent() {
+            return event;
+        }
+    }
+
+    private static class InFlightBatch {
+        private final long endPosition;
+        private final List<CorrelationData> confirms;
+        private final long sentAt;
+
+        InFlightBatch(long endPosition, List<CorrelationData> confirms, long sentAt) {
+            this.endPosition = endPosition;
+            this.confirms = confirms;
+            this.sentAt = sentAt;
+        }
+
+        boolean isConfirmed() {
+            return confirms.stream().allMatch(correlation -> correlation.getFuture().isDone());
+        }
+    }
+
+    private final StreamBridge streamBridge;
+    private final ObjectMapper mapper;
+    private final MeterRegistry meterRegistry;
+    private final OutboxLog log;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final int maxInFlightBatches;
+    private final long pollIntervalNanos;
+    private final boolean publisherConfirms;
+    private final boolean binaryEvents;
+    private final long confirmTimeoutNanos;
+    private final long retryBackoffNanos;
+    private final Timer confirmLatency;
+
+    // Only used by the relay thread
+    private final Deque<InFlightBatch> inFlightBatches = new ArrayDeque<>();
+    private final Map<String, DistributionSummary> batchSizes = new HashMap<>();
+
+    private volatile boolean running;
+    private Thread relayThread;
+
+    @Autowired
+    public EventOutbox(
+            StreamBridge streamBridge,
+            ObjectMapper mapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.outbox.directory:outbox}") String directory,
+            @Value("${app.outbox.segmentBytes:67108864}") Long segmentBytes,
+            @Value("${app.outbox.batchSize:100}") Integer batchSize,
+            @Value("${app.outbox.lingerMs:5}") Integer lingerMs,
+            @Value("${app.outbox.maxInFlightBatches:8}") Integer maxInFlightBatches,
+            @Value("${app.outbox.pollIntervalMs:1000}") Integer pollIntervalMs,
+            @Value("${app.outbox.publisherConfirms:false}") boolean publisherConfirms,
+            @Value("${app.outbox.confirmTimeoutMs:5000}") Integer confirmTimeoutMs,
+            @Value("${app.outbox.retryBackoffMs:1000}") Integer retryBackoffMs,
+            @Value("${app.outbox.binaryEvents:false}") boolean binaryEvents
+    ) {
+        this.streamBridge = streamBridge;
+        this.mapper = mapper;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.pollIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pollIntervalMs);
+        this.publisherConfirms = publisherConfirms;
+        this.confirmTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        this.retryBackoffNanos = TimeUnit.MILLISECONDS.toNanos(retryBackoffMs);
+        this.binaryEvents = binaryEvents;
+        try {
+            this.log = new OutboxLog(Path.of(directory), segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the outbox log in " + directory, e);
+        }
+
+        this.confirmLatency = Timer.builder("outbox.relay.confirm.latency")
+                .description("Time from sending a batch of events until all of them are confirmed by the broker")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        meterRegistry.gauge("outbox.pending.bytes", log, OutboxLog::pendingBytes);
+
+        LOG.info("Creates an event outbox in {} with batchSize = {}, lingerMs = {}, maxInFlightBatches = {}, publisherConfirms = {}, binaryEvents = {}",
+                directory, batchSize, lingerMs, maxInFlightBatches, publisherConfirms, binaryEvents);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        relayThread = new Thread(this::relay, "outbox-relay");
+        relayThread.setDaemon(true);
+        relayThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        LockSupport.unpark(relayThread);
+        relayThread.join(TimeUnit.SECONDS.toMillis(10));
+        log.close();
+    }
+
+    /**
+     * Stores the event in the outbox, the event is sent to the binding by the relay.
+     * Blocks until the event is on disk.
+     */
+    public void append(String bindingName, Event<Integer, ?> event) {
+        append(List.of(new OutboxEvent(bindingName, event)));
+    }
+
+    /**
+     * Stores the events in the outbox with one write, the events are sent in the given order by the relay.
+     * Blocks until the events are on disk.
+     */
+    public void append(List<OutboxEvent> events) {
+        try {
+            List<byte[]> records = new ArrayList<>(events.size());
+            for (OutboxEvent event : events) {
+                records.add(encode(event.getBindingName(), event.getEvent()));
+            }
+            log.append(records);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store " + events.size() + " events in the outbox", e);
+        }
+        LockSupport.unpark(relayThread);
+    }
+
+    /**
+     * @return true if all events in the outbox are confirmed by the broker
+     */
+    public boolean isDrained() {
+        return log.pendingBytes() == 0;
+    }
+
+    private void relay() {
+        while (running) {
+            try {
+                List<OutboxLog.Record> records = inFlightBatches.size() < maxInFlightBatches ? readBatch() : List.of();
+                if (!records.isEmpty()) {
+                    inFlightBatches.add(send(records));
+                }
+                // Wait for the oldest batch when no more batches can be sent
+                commitConfirmedBatches(records.isEmpty());
+                if (records.isEmpty() && inFlightBatches.isEmpty()) {
+                    LockSupport.parkNanos(pollIntervalNanos);
+                }
+
+            } catch (Exception e) {
+                LOG.warn("Failed to relay events from the outbox, will send the {} unconfirmed batches again: {}", inFlightBatches.size(), e.toString());
+                inFlightBatches.clear();
+                log.rewind();
+                LockSupport.parkNanos(retryBackoffNanos);
+            }
+        }
+    }
+
+    private List<OutboxLog.Record> readBatch() throws IOException {
+        List<OutboxLog.Record> records = log.read(batchSize);
+        if (!records.isEmpty() && records.size() < batchSize && lingerNanos > 0) {
+            LockSupport.parkNanos(lingerNanos);
+            records = new ArrayList<>(records);
+            records.addAll(log.read(batchSize - records.size()));
+        }
+        return records;
+    }
+
+    private InFlightBatch send(List<OutboxLog.Record> records) throws IOException {
+        Map<String, List<MessageBuilder<byte[]>>> messagesPerBinding = new LinkedHashMap<>();
+        for (OutboxLog.Record record : records) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.getPayload()));
+            String bindingName = in.readUTF();
+            int partitionKey = in.readInt();
+            byte[] event = in.readAllBytes();
+
+            messagesPerBinding.computeIfAbsent(bindingName, b -> new ArrayList<>()).add(MessageBuilder.withPayload(event)
+                    .setHeader("partitionKey", partitionKey)
+                    .setHeader(MessageHeaders.CONTENT_TYPE, EventBinaryCodec.isBinary(event) ? EventBinaryCodec.MIME_TYPE_VALUE : MimeTypeUtils.APPLICATION_JSON_VALUE));
+        }
+
+        List<CorrelationData> confirms = new ArrayList<>();
+        long sentAt = System.nanoTime();
+        for (Map.Entry<String, List<MessageBuilder<byte[]>>> binding : messagesPerBinding.entrySet()) {
+            String bindingName = binding.getKey();
+            for (MessageBuilder<byte[]> message : binding.getValue()) {
+                if (publisherConfirms) {
+                    CorrelationData correlation = new CorrelationData();
+                    message.setHeader(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION, correlation);
+                    confirms.add(correlation);
+                }
+                if (!streamBridge.send(bindingName, message.build())) {
+                    throw new IllegalStateException("Failed to send an event to " + bindingName);
+                }
+            }
+            batchSizes.computeIfAbsent(bindingName, this::batchSize).record(binding.getValue().size());
+        }
+        LOG.debug("Sent {} events from the outbox to {} bindings", records.size(), messagesPerBinding.size());
+        return new InFlightBatch(records.get(records.size() - 1).getEndPosition(), confirms, sentAt);
+    }
+
+    private DistributionSummary batchSize(String bindingName) {
+        return DistributionSummary.builder("outbox.relay.batch.size")
+                .description("Number of events sent to a binding per batch")
+                .tag("binding", bindingName)
+                .register(meterRegistry);
+    }
+
+    private void commitConfirmedBatches(boolean waitForOldest) throws Exception {
+        while (!inFlightBatches.isEmpty()) {
+            InFlightBatch batch = inFlightBatches.peek();
+            if (!batch.isConfirmed() && !(waitForOldest || inFlightBatches.size() >= maxInFlightBatches)) {
+                return;
+            }
+            for (CorrelationData correlation : batch.confirms) {
+                long timeout = Math.max(0, batch.sentAt + confirmTimeoutNanos - System.nanoTime());
+                CorrelationData.Confirm confirm = correlation.getFuture().get(timeout, TimeUnit.NANOSECONDS);
+                if (!confirm.isAck()) {
+                    throw new IllegalStateException("The broker did not confirm an event: " + confirm.getReason());
+                }
+                if (correlation.getReturned() != null) {
+                    throw new IllegalStateException("The broker returned an event: " + correlation.getReturned().getReplyText());
+                }
+            }
+            confirmLatency.record(System.nanoTime() - batch.sentAt, TimeUnit.NANOSECONDS);
+            log.commit(batch.endPosition);
+            inFlightBatches.poll();
+        }
+    }
+
+    private byte[] encode(String bindingName, Event<Integer, ?> event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(bindingName);
+        out.writeInt(event.getKey());
+        out.write(binaryEvents ? EventBinaryCodec.encode(event) : mapper.writeValueAsBytes(event));
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,368 @@
+package com.pacifique.microservices.composite.product.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only log of records, stored in segment files in one directory.
+ *
+ * Each record is written as its length, its CRC32 and its bytes. A record is on disk when
+ * append returns, appenders that wait for the disk at the same time share one fsync.
+ * Records are addressed by their position in the log, which only grows. Segment files are
+ * named after the position of their first record.
+ *
+ * The log has a single reader. It reads ahead of the committed position, and can rewind to the
+ * committed position to read the records after it again. The committed position is kept in a
+ * checkpoint file, and segments before it are deleted. After a crash, a record that was only
+ * partly written at the end of the last segment is dropped when the log is opened.
+ */
+public class OutboxLog implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(OutboxLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "committed.checkpoint";
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    public static class Record {
+        private final byte[] payload;
+        private final long endPosition;
+
+        Record(byte[] payload, long endPosition) {
+            this.payload = payload;
+            this.endPosition = endPosition;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        /**
+         * @return the position right after this record, i.e. the position to commit once the record is handled
+         */
+        public long getEndPosition() {
+            return endPosition;
+        }
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final NavigableSet<Long> segments = new ConcurrentSkipListSet<>();
+    private final Object syncLock = new Object();
+    private final AtomicLong durablePosition = new AtomicLong();
+
+    // Guarded by this
+    private FileChannel writeChannel;
+    private long writeSegmentBase;
+    private volatile long writePosition;
+
+    // Only used by the reader
+    private volatile long committedPosition;
+    private long readPosition;
+    private FileChannel readChannel;
+    private long readSegmentBase = -1;
+
+    public OutboxLog(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .forEach(segments::add);
+        }
+        if (segments.isEmpty()) {
+            segments.add(0L);
+        }
+
+        writeSegmentBase = segments.last();
+        writeChannel = FileChannel.open(segmentPath(writeSegmentBase), CREATE, READ, WRITE);
+        long validSize = validSize(writeChannel);
+        if (validSize < writeChannel.size()) {
+            LOG.warn("Drops {} bytes of a partly written record at the end of the outbox segment {}", writeChannel.size() - validSize, writeSegmentBase);
+            writeChannel.truncate(validSize);
+        }
+        writeChannel.position(validSize);
+        writePosition = writeSegmentBase + validSize;
+        durablePosition.set(writePosition);
+
+        long checkpoint = readCheckpoint();
+        committedPosition = Math.min(Math.max(checkpoint, segments.first()), writePosition);
+        readPosition = committedPosition;
+        LOG.info("Opened the outbox log in {} with {} bytes not committed", directory, writePosition - committedPosition);
+    }
+
+    /**
+     * Appends a record and waits until it is on disk.
+     *
+     * @return the position right after the record
+     */
+    public long append(byte[] payload) throws IOException {
+        return append(List.of(payload));
+    }
+
+    /**
+     * Appends the records with one write and waits until they are on disk.
+     *
+     * @return the position right after the last record
+     */
+    public long append(List<byte[]> payloads) throws IOException {
+        int size = 0;
+        for (byte[] payload : payloads) {
+            size += RECORD_HEADER_SIZE + payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (byte[] payload : payloads) {
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        }
+        buffer.flip();
+
+        long endPosition;
+        synchronized (this) {
+            if (writePosition > writeSegmentBase && writePosition - writeSegmentBase + buffer.remaining() > segmentBytes) {
+                rollSegment();
+            }
+            while (buffer.hasRemaining()) {
+                writeChannel.write(buffer);
+            }
+            writePosition += buffer.capacity();
+            endPosition = writePosition;
+        }
+        sync(endPosition);
+        return endPosition;
+    }
+
+    /**
+     * Reads the next records, without committing them. Only records that are on disk are returned.
+     */
+    public List<Record> read(int maxRecords) throws IOException {
+        List<Record> records = new ArrayList<>();
+        long position = readPosition;
+        long limit = durablePosition.get();
+
+        while (records.size() < maxRecords && position < limit) {
+            long base = segments.floor(position);
+            if (base != readSegmentBase) {
+                openReadSegment(base);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            readFully(header, position - base);
+            int length = header.getInt(0);
+            int checksum = header.getInt(4);
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position - base + RECORD_HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Corrupt outbox record at position " + position + " in segment " + base);
+            }
+
+            position += RECORD_HEADER_SIZE + length;
+            records.add(new Record(payload.array(), position));
+        }
+        readPosition = position;
+        return records;
+    }
+
+    /**
+     * Lets the next read start at the committed position again.
+     */
+    public void rewind() {
+        readPosition = committedPosition;
+    }
+
+    /**
+     * Marks all records before the position as handled, and deletes the segments that only hold handled records.
+     */
+    public void commit(long position) throws IOException {
+        writeCheckpoint(position);
+        committedPosition = position;
+
+        Long base = segments.first();
+        Long next = segments.higher(base);
+        while (next != null && next <= position) {
+            if (base == readSegmentBase) {
+                closeReadSegment();
+            }
+            Files.deleteIfExists(segmentPath(base));
+            segments.remove(base);
+            LOG.debug("Deleted the handled outbox segment {}", base);
+            base = next;
+            next = segments.higher(base);
+        }
+    }
+
+    /**
+     * @return the number of bytes of the records that are appended but not committed
+     */
+    public long pendingBytes() {
+        return writePosition - committedPosition;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeReadSegment();
+        writeChannel.force(false);
+        writeChannel.close();
+    }
+
+    private void sync(long position) throws IOException {
+        if (durablePosition.get() >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durablePosition.get() >= position) {
+                return;
+            }
+            FileChannel channel;
+            long end;
+            synchronized (this) {
+                channel = writeChannel;
+                end = writePosition;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // The segment was rolled after the record was written, rolling forces the segment to disk
+                if (durablePosition.get() >= position) {
+                    return;
+                }
+                throw e;
+            }
+            durablePosition.accumulateAndGet(end, Math::max);
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        writeChannel.force(false);
+        writeChannel.close();
+        durablePosition.accumulateAndGet(writePosition, Math::max);
+
+        writeSegmentBase = writePosition;
+        writeChannel = FileChannel.open(segmentPath(writeSegmentBase), CREATE, READ, WRITE);
+        segments.add(writeSegmentBase);
+        LOG.debug("Rolled the outbox log to a new segment {}", writeSegmentBase);
+    }
+
+    private long validSize(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (position + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, position);
+            int length = header.getInt(0);
+            if (length < 0 || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            channel.read(payload, position + RECORD_HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private void openReadSegment(long base) throws IOException {
+        closeReadSegment();
+        readChannel = FileChannel.open(segmentPath(base), READ);
+        readSegmentBase = base;
+    }
+
+    private void closeReadSegment() throws IOException {
+        if (readChannel != null) {
+            readChannel.close();
+            readChannel = null;
+            readSegmentBase = -1;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = readChannel.read(buffer, offset + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of outbox segment " + readSegmentBase);
+            }
+        }
+    }
+
+    /**
+     * @return the committed position, or 0 if there is no checkpoint or it can't be read, then the records of the
+     *         remaining segments are relayed again
+     */
+    private long readCheckpoint() {
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(checkpoint, StandardCharsets.US_ASCII).trim());
+        } catch (IOException | NumberFormatException e) {
+            LOG.warn("Failed to read the outbox checkpoint {}, will relay the records from the first segment: {}", checkpoint, e.toString());
+            return 0;
+        }
+    }
+
+    /**
+     * Replaces the checkpoint with a file that is on disk before it is moved, and forces the directory to disk so
+     * the move survives a crash.
+     */
+    private void writeCheckpoint(long position) throws IOException {
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Long.toString(position).getBytes(StandardCharsets.US_ASCII));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), ATOMIC_MOVE, REPLACE_EXISTING);
+        forceDirectory();
+    }
+
+    private void forceDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, READ)) {
+            channel.force(true);
+        } catch (UnsupportedOperationException | AccessDeniedException e) {
+            // A directory can't be opened or forced on every platform, e.g. on Windows
+            LOG.debug("Can't force the outbox directory {} to disk: {}", directory, e.toString());
+        }
+    }
+
+    private Path segmentPath(long base) {
+        return directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,117 @@
+package com.pacifique.microservices.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pacifique.microservices.api.composite.product.ProductAggregate;
+import com.pacifique.microservices.api.composite.product.ServiceAddresses;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded near-cache of assembled composite products, keyed by productId.
+ *
+ * Entries are evicted by size and time to live, and invalidated on every instance when a core
+ * service has stored a CREATE or DELETE event for the product, see AcceptedEventsConfig.
+ *
+ * An aggregate is only cached if the product was not invalidated after its fan-out to the core services started,
+ * i.e. after the generation the caller got when it started. Concurrent loads of a product share one fan-out, and
+ * callers arriving after an invalidation start a new one instead of joining the stale one. Only complete aggregates
+ * are cached, a degraded one is loaded again by the next request.
+ */
+@Component
+public class ProductAggregateCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ProductAggregateCache.class);
+
+    private final boolean enabled;
+    private final Cache<Integer, ProductAggregate> cache;
+    // The generation of the last invalidation of a product, kept as long as a cached aggregate would be
+    private final Cache<Integer, Long> invalidations;
+    private final AtomicLong generation = new AtomicLong();
+    private final SingleFlight<Integer, ProductAggregate> loads = new SingleFlight<>();
+
+    @Autowired
+    public ProductAggregateCache(
+            @Value("${app.aggregate-cache.enabled:true}") boolean enabled,
+            @Value("${app.aggregate-cache.maximumSize:10000}") Long maximumSize,
+            @Value("${app.aggregate-cache.timeToLiveSeconds:30}") Integer timeToLiveSeconds,
+            MeterRegistry meterRegistry
+    ) {
+        LOG.info("Creates a product aggregate cache, enabled = {}, maximumSize = {}, timeToLiveSeconds = {}", enabled, maximumSize, timeToLiveSeconds);
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(timeToLiveSeconds))
+                .recordStats()
+                .build();
+        this.invalidations = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(timeToLiveSeconds))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "productAggregateCache");
+    }
+
+    public ProductAggregate getIfPresent(int productId) {
+        return enabled ? cache.getIfPresent(productId) : null;
+    }
+
+    /**
+     * Loads the aggregate with one fan-out for all concurrent callers and caches it, unless the product is
+     * invalidated before the fan-out completes.
+     */
+    public Mono<ProductAggregate> load(int productId, Supplier<Mono<ProductAggregate>> fanOut) {
+        return loads.execute(productId, () -> Mono.defer(() -> {
+            long startedAt = generation();
+            return fanOut.get().doOnNext(aggregate -> put(aggregate, startedAt));
+        }));
+    }
+
+    /**
+     * The current generation, to pass to put for an aggregate whose fan-out starts now.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public void put(ProductAggregate aggregate, long startedAt) {
+        if (!enabled || !isComplete(aggregate)) {
+            return;
+        }
+        int productId = aggregate.getProductId();
+        if (invalidatedSince(productId, startedAt)) {
+            LOG.debug("Skips the stale product aggregate for productId: {}", productId);
+            return;
+        }
+        cache.put(productId, aggregate);
+        // An invalidation between the check and the put has not removed it
+        if (invalidatedSince(productId, startedAt)) {
+            cache.asMap().remove(productId, aggregate);
+        }
+    }
+
+    public void invalidate(int productId) {
+        LOG.debug("Invalidates cached product aggregate for productId: {}", productId);
+        invalidations.put(productId, generation.incrementAndGet());
+        cache.invalidate(productId);
+        loads.forget(productId);
+    }
+
+    private boolean invalidatedSince(int productId, long startedAt) {
+        Long invalidatedAt = invalidations.getIfPresent(productId);
+        return invalidatedAt != null && invalidatedAt > startedAt;
+    }
+
+    private static boolean isComplete(ProductAggregate aggregate) {
+        ServiceAddresses addresses = aggregate.getServiceAddresses();
+        return addresses == null || addresses.getDegraded() == null || addresses.getDegraded().isEmpty();
+    }
+}
@@ -1,25 +1,32 @@
 package com.pacifique.microservices.composite.product.services;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pacifique.microservices.api.core.product.Product;
 import com.pacifique.microservices.api.core.product.ProductService;
 import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.recommendation.RecommendationPage;
 import com.pacifique.microservices.api.core.recommendation.RecommendationService;
+import com.pacifique.microservices.api.core.recommendation.RecommendationStatistics;
 import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.core.review.ReviewPage;
 import com.pacifique.microservices.api.core.review.ReviewService;
+import com.pacifique.microservices.api.core.review.ReviewStatistics;
 import com.pacifique.microservices.api.event‎.Event;
 import com.pacifique.microservices.api.exceptions.InvalidInputException;
 import com.pacifique.microservices.api.exceptions.NotFoundException;
+import com.pacifique.microservices.api.exceptions.ServiceUnavailableException;
 import com.pacifique.microservices.util.http.HttpErrorInfo;
+import com.pacifique.microservices.util.tracing.RequestTracer;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
-import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
@@ -27,9 +34,10 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
-import java.util.logging.Level;
+import java.util.stream.Collectors;
 
 import static com.pacifique.microservices.api.event‎.Event.Type.CREATE;
 import static com.pacifique.microservices.api.event‎.Event.Type.DELETE;
@@ -39,28 +47,41 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
 
     private static final Logger LOG = LoggerFactory.getLogger(ProductCompositeIntegration.class);
     private final WebClient webClient;
-    private final ObjectMapper mapper;
     private final String productServiceUrl;
     private final String recommendationServiceUrl;
     private final String reviewServiceUrl;
-    private final StreamBridge streamBridge;
+    private final EventOutbox outbox;
     private final Scheduler publishEventScheduler;
+    private final DownstreamCallPolicies policies;
+    private final CompositeMetrics metrics;
+    private final RequestTracer tracer;
+    private final String acceptSingle;
+    private final String acceptStream;
 
     @Autowired
     public ProductCompositeIntegration(
             @Qualifier("publishEventScheduler") Scheduler publishEventScheduler,
             WebClient.Builder webClientBuilder,
-            StreamBridge streamBridge,
-            ObjectMapper mapper
-
+            EventOutbox outbox,
+            DownstreamCallPolicies policies,
+            CompositeMetrics metrics,
+            RequestTracer tracer,
+            @Value("${app.downstream.binary:true}") boolean binary
     ) {
-        this.mapper = mapper;
+        this.policies = policies;
+        this.metrics = metrics;
+        this.tracer = tracer;
         this.webClient = webClientBuilder.build();
-        this.streamBridge = streamBridge;
+        this.outbox = outbox;
         this.publishEventScheduler = publishEventScheduler;
         this.productServiceUrl = "http://product";
         this.recommendationServiceUrl = "http://recommendation";
         this.reviewServiceUrl = "http://review";
+
+        // JSON is still accepted, from core services that don't produce Smile
+        this.acceptSingle = binary ? "application/x-jackson-smile, application/json;q=0.5" : MediaType.APPLICATION_JSON_VALUE;
+        this.acceptStream = binary ? "application/stream+x-jackson-smile, application/json;q=0.5" : MediaType.APPLICATION_JSON_VALUE;
+        LOG.info("Calls the core services with Accept: {}", acceptSingle);
     }
 
 
@@ -75,11 +96,17 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     @Override
     public Mono<Product> getProduct(int productId) {
         String url = productServiceUrl + "/product/" + productId;
-        LOG.info("Will call getProduct API on URL {}", url);
+        return call(policies.product(), "getProduct", url, get(url, false).retrieve().bodyToMono(Product.class))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .onErrorMap(this::isRejected, this::handleRejection);
+    }
 
-        return webClient.get().uri(url).retrieve().bodyToMono(Product.class)
-                .log(LOG.getName(), Level.FINE)
-                .onErrorMap(WebClientResponseException.class, this::handleException);
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        String url = productServiceUrl + "/product?productIds=" + joinIds(productIds);
+        return call(policies.product(), "getProducts", url, get(url, true).retrieve().bodyToFlux(Product.class))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .onErrorMap(this::isRejected, this::handleRejection);
     }
 
     @Override
@@ -102,8 +129,37 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     @Override
     public Flux<Recommendation> getRecommendations(int productId) {
         String url = recommendationServiceUrl + "/recommendation?productId=" + productId;
-        LOG.debug("Will call getRecommendations API on URL {}", url);
-        return webClient.get().uri(url).retrieve().bodyToFlux(Recommendation.class).log(LOG.getName(), Level.FINE).onErrorResume(error -> Flux.empty());
+        return call(policies.recommendation(), "getRecommendations", url, get(url, true).retrieve().bodyToFlux(Recommendation.class));
+    }
+
+    @Override
+    public Mono<RecommendationPage> getRecommendationPage(int productId, int limit, String cursor) {
+        String url = recommendationServiceUrl + "/recommendation?productId=" + productId + pageParams(limit, cursor);
+        return call(policies.recommendation(), "getRecommendationPage", url, get(url, false).retrieve().bodyToMono(RecommendationPage.class))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .onErrorMap(this::isRejected, this::handleRejection);
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendationsForProducts(List<Integer> productIds) {
+        String url = recommendationServiceUrl + "/recommendation?productIds=" + joinIds(productIds);
+        return call(policies.recommendation(), "getRecommendationsForProducts", url, get(url, true).retrieve().bodyToFlux(Recommendation.class));
+    }
+
+    @Override
+    public Mono<RecommendationStatistics> getRecommendationStatistics(int productId) {
+        String url = recommendationServiceUrl + "/recommendation/statistics?productId=" + productId;
+        return call(policies.recommendation(), "getRecommendationStatistics", url, get(url, false).retrieve().bodyToMono(RecommendationStatistics.class))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .onErrorMap(this::isRejected, this::handleRejection);
+    }
+
+    @Override
+    public Flux<RecommendationStatistics> getRecommendationStatisticsForProducts(List<Integer> productIds) {
+        String url = recommendationServiceUrl + "/recommendation/statistics?productIds=" + joinIds(productIds);
+        return call(policies.recommendation(), "getRecommendationStatisticsForProducts", url, get(url, true).retrieve().bodyToFlux(RecommendationStatistics.class))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .onErrorMap(this::isRejected, this::handleRejection);
     }
 
     @Override
@@ -116,7 +172,7 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     @Override
     public Mono<Review> createReview(Review body) {
         return Mono.fromCallable(() -> {
-            sendMessage("reviews-out-0", new Event<>(body, body.getReviewId(), CREATE));
+            sendMessage("reviews-out-0", new Event<>(body, body.getProductId(), CREATE));
             return body;
         }).subscribeOn(publishEventScheduler);
 
@@ -125,8 +181,37 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     @Override
     public Flux<Review> getReviews(int productId) {
         String url = reviewServiceUrl + "/review?productId=" + productId;
-        LOG.debug("Will call getReviews API on URL {}", url);
-        return webClient.get().uri(url).retrieve().bodyToFlux(Review.class).log(LOG.getName(), Level.FINE).onErrorResume(error -> Flux.empty());
+        return call(policies.review(), "getReviews", url, get(url, true).retrieve().bodyToFlux(Review.class));
+    }
+
+    @Override
+    public Mono<ReviewPage> getReviewPage(int productId, int limit, String cursor) {
+        String url = reviewServiceUrl + "/review?productId=" + productId + pageParams(limit, cursor);
+        return call(policies.review(), "getReviewPage", url, get(url, false).retrieve().bodyToMono(ReviewPage.class))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .onErrorMap(this::isRejected, this::handleRejection);
+    }
+
+    @Override
+    public Flux<Review> getReviewsForProducts(List<Integer> productIds) {
+        String url = reviewServiceUrl + "/review?productIds=" + joinIds(productIds);
+        return call(policies.review(), "getReviewsForProducts", url, get(url, true).retrieve().bodyToFlux(Review.class));
+    }
+
+    @Override
+    public Mono<ReviewStatistics> getReviewStatistics(int productId) {
+        String url = reviewServiceUrl + "/review/statistics?productId=" + productId;
+        return call(policies.review(), "getReviewStatistics", url, get(url, false).retrieve().bodyToMono(ReviewStatistics.class))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .onErrorMap(this::isRejected, this::handleRejection);
+    }
+
+    @Override
+    public Flux<ReviewStatistics> getReviewStatisticsForProducts(List<Integer> productIds) {
+        String url = reviewServiceUrl + "/review/statistics?productIds=" + joinIds(productIds);
+        return call(policies.review(), "getReviewStatisticsForProducts", url, get(url, true).retrieve().bodyToFlux(ReviewStatistics.class))
+                .onErrorMap(WebClientResponseException.class, this::handleException)
+                .onErrorMap(this::isRejected, this::handleRejection);
     }
 
     @Override
@@ -136,6 +221,66 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     }
 
 
+    /**
+     * Stores the create events for a composite product in the outbox with one write.
+     */
+    public Mono<Void> createCompositeProduct(Product product, List<Recommendation> recommendations, List<Review> reviews) {
+        return Mono.fromRunnable(() -> {
+            List<EventOutbox.OutboxEvent> events = new ArrayList<>();
+            events.add(new EventOutbox.OutboxEvent("products-out-0", new Event<>(product, product.getProductId(), CREATE)));
+            recommendations.forEach(r -> events.add(new EventOutbox.OutboxEvent("recommendations-out-0", new Event<>(r, r.getProductId(), CREATE))));
+            reviews.forEach(r -> events.add(new EventOutbox.OutboxEvent("reviews-out-0", new Event<>(r, r.getProductId(), CREATE))));
+            sendMessages(product.getProductId(), events);
+        }).subscribeOn(publishEventScheduler).then();
+    }
+
+    /**
+     * Stores the delete events for a composite product in the outbox with one write.
+     */
+    public Mono<Void> deleteCompositeProduct(int productId) {
+        return Mono.fromRunnable(() -> sendMessages(productId, List.of(
+                new EventOutbox.OutboxEvent("products-out-0", new Event<>(null, productId, DELETE)),
+                new EventOutbox.OutboxEvent("recommendations-out-0", new Event<>(null, productId, DELETE)),
+                new EventOutbox.OutboxEvent("reviews-out-0", new Event<>(null, productId, DELETE)))))
+                .subscribeOn(publishEventScheduler).then();
+    }
+
+    /**
+     * Applies the policy of the core service to the call, and times it as seen by the composite.
+     */
+    private <T> Mono<T> call(DownstreamCallPolicy policy, String method, String url, Mono<T> request) {
+        return tracer.trace(method, url, metrics.timeCall(policy.getServiceName(), method, policy.apply(request)));
+    }
+
+    private <T> Flux<T> call(DownstreamCallPolicy policy, String method, String url, Flux<T> request) {
+        return tracer.trace(method, url, metrics.timeCall(policy.getServiceName(), method, policy.apply(request)));
+    }
+
+    /**
+     * @param stream true if the response is read with bodyToFlux, to ask for the streaming Smile media type
+     */
+    private WebClient.RequestHeadersSpec<?> get(String url, boolean stream) {
+        return webClient.get().uri(url).header(HttpHeaders.ACCEPT, stream ? acceptStream : acceptSingle);
+    }
+
+    private String joinIds(List<Integer> productIds) {
+        return productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    private String pageParams(int limit, String cursor) {
+        // The cursors are URL safe
+        return "&limit=" + limit + (cursor == null ? "" : "&cursor=" + cursor);
+    }
+
+    private boolean isRejected(Throwable ex) {
+        return ex instanceof CallNotPermittedException || ex instanceof BulkheadFullException;
+    }
+
+    private Throwable handleRejection(Throwable ex) {
+        LOG.warn("Call rejected without contacting the service: {}", ex.getMessage());
+        return new ServiceUnavailableException(ex.getMessage(), ex);
+    }
+
     private Throwable handleException(Throwable ex) {
         if (!(ex instanceof WebClientResponseException)) {
             LOG.warn("Got an unexpected HTTP error: {},will rethrow it", ex.toString());
@@ -159,16 +304,22 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
 
     private String getErrorMessage(WebClientResponseException ex) {
         try {
-            return mapper.readValue(ex.getResponseBodyAsString(), HttpErrorInfo.class).getMessage();
-        } catch (IOException ioex) {
+            // Decoded with the content type of the error response, JSON or Smile
+            HttpErrorInfo errorInfo = ex.getResponseBodyAs(HttpErrorInfo.class);
+            return errorInfo != null ? errorInfo.getMessage() : ex.getMessage();
+        } catch (RuntimeException re) {
             return ex.getMessage();
         }
     }
 
     private void sendMessage(String bindingName, Event event) {
-        LOG.debug("Sending a {} message to {}", event.getEventType(), bindingName);
-        Message<Event> message = MessageBuilder.withPayload(event).setHeader("partitionKey", event.getKey()).build();
-        streamBridge.send(bindingName, message);
+        LOG.debug("Stores a {} message to {} in the outbox", event.getEventType(), bindingName);
+        metrics.timePublish(bindingName, () -> outbox.append(bindingName, event));
+    }
+
+    private void sendMessages(int productId, List<EventOutbox.OutboxEvent> events) {
+        LOG.debug("Stores {} messages for product.id {} in the outbox", events.size(), productId);
+        metrics.timePublish(CompositeMetrics.COMPOSITE_BINDING, () -> outbox.append(events));
     }
 
 
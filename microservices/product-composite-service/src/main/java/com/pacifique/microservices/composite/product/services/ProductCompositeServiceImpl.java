@@ -1,21 +1,29 @@
 package com.pacifique.microservices.composite.product.services;
 
-import static java.util.logging.Level.FINE;
-
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import com.pacifique.microservices.api.composite.product.*;
 import com.pacifique.microservices.api.core.product.Product;
 import com.pacifique.microservices.api.core.recommendation.Recommendation;
 import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.core.review.ReviewStatistics;
 import com.pacifique.microservices.util.http.ServiceUtil;
+import com.pacifique.microservices.util.tracing.RequestTracer;
 
 @RestController
 public class ProductCompositeServiceImpl implements ProductCompositeService {
@@ -24,11 +32,29 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
 
     private final ServiceUtil serviceUtil;
     private final ProductCompositeIntegration integration;
+    private final ProductAggregateCache aggregateCache;
+    private final ProductReadModel readModel;
+    private final CompositeMetrics metrics;
+    private final RequestTracer tracer;
+    private final int maxBatchSize;
 
     @Autowired
-    public ProductCompositeServiceImpl(ServiceUtil serviceUtil, ProductCompositeIntegration integration) {
+    public ProductCompositeServiceImpl(
+            ServiceUtil serviceUtil,
+            ProductCompositeIntegration integration,
+            ProductAggregateCache aggregateCache,
+            ProductReadModel readModel,
+            CompositeMetrics metrics,
+            RequestTracer tracer,
+            @Value("${app.maxBatchSize:200}") Integer maxBatchSize
+    ) {
         this.serviceUtil = serviceUtil;
         this.integration = integration;
+        this.aggregateCache = aggregateCache;
+        this.readModel = readModel;
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
@@ -36,32 +62,23 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
 
         try {
 
-            List<Mono> monoList = new ArrayList<>();
-
-            LOG.info("Will create a new composite entity for product.id: {}", body.getProductId());
-
             Product product = new Product(body.getProductId(), body.getName(), body.getWeight(), null);
-            monoList.add(integration.createProduct(product));
 
-            if (body.getRecommendations() != null) {
-                body.getRecommendations().forEach(r -> {
-                    Recommendation recommendation = new Recommendation(body.getProductId(), r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), null);
-                    monoList.add(integration.createRecommendation(recommendation));
-                });
-            }
+            List<Recommendation> recommendations = (body.getRecommendations() == null) ? List.of() :
+                    body.getRecommendations().stream()
+                            .map(r -> new Recommendation(body.getProductId(), r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), null))
+                            .collect(Collectors.toList());
 
-            if (body.getReviews() != null) {
-                body.getReviews().forEach(r -> {
-                    Review review = new Review(body.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), null);
-                    monoList.add(integration.createReview(review));
-                });
-            }
+            List<Review> reviews = (body.getReviews() == null) ? List.of() :
+                    body.getReviews().stream()
+                            .map(r -> new Review(body.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), null))
+                            .collect(Collectors.toList());
 
             LOG.debug("createCompositeProduct: composite entities created for productId: {}", body.getProductId());
 
-            return Mono.zip(r -> "", monoList.toArray(new Mono[0]))
-                    .doOnError(ex -> LOG.warn("createCompositeProduct failed: {}", ex.toString()))
-                    .then();
+            // All events of the composite product are stored in the outbox with one write
+            return tracer.trace("createProduct", body.getProductId(), integration.createCompositeProduct(product, recommendations, reviews))
+                    .doOnError(ex -> LOG.warn("createCompositeProduct failed: {}", ex.toString()));
 
         } catch (RuntimeException re) {
             LOG.warn("createCompositeProduct failed: {}", re.toString());
@@ -72,14 +89,150 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
     @Override
     public Mono<ProductAggregate> getProduct(int productId) {
 
-        LOG.info("Will get composite product info for product.id={}", productId);
-        return Mono.zip(
-                        values -> createProductAggregate((Product) values[0], (List<Recommendation>) values[1], (List<Review>) values[2], serviceUtil.getServiceAddress()),
-                        integration.getProduct(productId),
-                        integration.getRecommendations(productId).collectList(),
-                        integration.getReviews(productId).collectList())
-                .doOnError(ex -> LOG.warn("getCompositeProduct failed: {}", ex.toString()))
-                .log(LOG.getName(), FINE);
+        ProductReadModel.Entry materialized = readModel.get(productId);
+        if (materialized != null) {
+            LOG.debug("getCompositeProduct: found product.id={} in the read model", productId);
+            metrics.countProductRead(CompositeMetrics.READ_MODEL);
+            return tracer.trace("getProductFromReadModel", productId, Mono.deferContextual(context -> {
+                ServerWebExchangeContextFilter.getExchange(context)
+                        .ifPresent(exchange -> addStalenessHeaders(exchange.getResponse().getHeaders(), materialized));
+                return Mono.just(createProductAggregate(materialized.getProduct(), materialized.getRecommendations(), materialized.getReviews(),
+                        List.of(), serviceUtil.getServiceAddress()));
+            }));
+        }
+
+        ProductAggregate cached = aggregateCache.getIfPresent(productId);
+        if (cached != null) {
+            LOG.debug("getCompositeProduct: found product.id={} in the aggregate cache", productId);
+            metrics.countProductRead(CompositeMetrics.AGGREGATE_CACHE);
+            return tracer.trace("getProductFromCache", productId, Mono.just(cached));
+        }
+
+        // Concurrent requests for the same product share one fan-out to the core services
+        metrics.countProductRead(CompositeMetrics.CORE_SERVICES);
+        return tracer.trace("getProduct", productId, aggregateCache.load(productId, () -> Mono.defer(() -> {
+                    CompositeMetrics.FanOut fanOut = metrics.startFanOut();
+                    return Mono.zip(
+                                    values -> {
+                                        Optional<List<Recommendation>> recommendations = (Optional<List<Recommendation>>) values[1];
+                                        Optional<List<Review>> reviews = (Optional<List<Review>>) values[2];
+                                        return createProductAggregate((Product) values[0], recommendations.orElse(List.of()), reviews.orElse(List.of()),
+                                                degradedServices(recommendations, reviews), serviceUtil.getServiceAddress());
+                                    },
+                                    fanOut.track("product", integration.getProduct(productId)),
+                                    orDegraded(fanOut.track("recommendation", integration.getRecommendations(productId).collectList()), "recommendation"),
+                                    orDegraded(fanOut.track("review", integration.getReviews(productId).collectList()), "review"))
+                            .transform(fanOut::timed);
+                }))
+                .doOnError(ex -> LOG.warn("getCompositeProduct failed: {}", ex.toString())));
+    }
+
+    @Override
+    public Flux<ProductAggregatePart> streamProduct(int productId) {
+
+        String serviceAddress = serviceUtil.getServiceAddress();
+
+        // The product header is sent first, then the summaries are streamed without collecting them
+        return tracer.trace("streamProduct", productId, Flux.concat(
+                        integration.getProduct(productId)
+                                .map(p -> new ProductAggregatePart(ProductAggregatePart.Type.PRODUCT, p.getProductId(), p.getName(), p.getWeight(), null, null, serviceAddress)),
+                        Flux.merge(
+                                integration.getRecommendations(productId)
+                                        .map(r -> new ProductAggregatePart(ProductAggregatePart.Type.RECOMMENDATION, productId, null, null,
+                                                new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent()), null, r.getServiceAddress()))
+                                        .onErrorResume(ex -> {
+                                            LOG.warn("streamCompositeProduct: recommendations are left out: {}", ex.toString());
+                                            return Flux.empty();
+                                        }),
+                                integration.getReviews(productId)
+                                        .map(r -> new ProductAggregatePart(ProductAggregatePart.Type.REVIEW, productId, null, null,
+                                                null, new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()), r.getServiceAddress()))
+                                        .onErrorResume(ex -> {
+                                            LOG.warn("streamCompositeProduct: reviews are left out: {}", ex.toString());
+                                            return Flux.empty();
+                                        })))
+                .doOnError(ex -> LOG.warn("streamCompositeProduct failed: {}", ex.toString())));
+    }
+
+    @Override
+    public Mono<RecommendationSummaryPage> getProductRecommendations(int productId, int limit, String cursor) {
+
+        return tracer.trace("getProductRecommendations", productId, integration.getRecommendationPage(productId, limit, cursor)
+                .map(page -> new RecommendationSummaryPage(
+                        page.getRecommendations().stream()
+                                .map(r -> new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent()))
+                                .collect(Collectors.toList()),
+                        page.getNextCursor()))
+                .doOnError(ex -> LOG.warn("getCompositeProductRecommendations failed: {}", ex.toString())));
+    }
+
+    @Override
+    public Mono<ReviewSummaryPage> getProductReviews(int productId, int limit, String cursor) {
+
+        return tracer.trace("getProductReviews", productId, integration.getReviewPage(productId, limit, cursor)
+                .map(page -> new ReviewSummaryPage(
+                        page.getReviews().stream()
+                                .map(r -> new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()))
+                                .collect(Collectors.toList()),
+                        page.getNextCursor()))
+                .doOnError(ex -> LOG.warn("getCompositeProductReviews failed: {}", ex.toString())));
+    }
+
+    @Override
+    public Flux<ReviewStatistics> getReviewStatistics(List<Integer> productIds) {
+
+        ServiceUtil.checkBatchSize(productIds, maxBatchSize);
+
+        return tracer.trace("getReviewStatistics", productIds.size(), integration.getReviewStatisticsForProducts(productIds)
+                .doOnError(ex -> LOG.warn("getCompositeReviewStatistics failed: {}", ex.toString())));
+    }
+
+    @Override
+    public Flux<ProductAggregate> getProducts(List<Integer> productIds) {
+
+        ServiceUtil.checkBatchSize(productIds, maxBatchSize);
+
+        List<Integer> distinctIds = productIds.stream().distinct().collect(Collectors.toList());
+        Map<Integer, ProductAggregate> cached = new HashMap<>();
+        List<Integer> missingIds = new ArrayList<>();
+        distinctIds.forEach(productId -> {
+            ProductAggregate aggregate = aggregateCache.getIfPresent(productId);
+            if (aggregate != null) {
+                cached.put(productId, aggregate);
+            } else {
+                missingIds.add(productId);
+            }
+        });
+        LOG.debug("getCompositeProducts: found {} of {} products in the aggregate cache", cached.size(), distinctIds.size());
+
+        // One call per core service for all products that are not cached
+        long startedAt = aggregateCache.generation();
+        Mono<Map<Integer, ProductAggregate>> loaded = missingIds.isEmpty() ? Mono.just(Map.of()) : Mono.zip(
+                        integration.getProducts(missingIds).collectList(),
+                        orDegraded(integration.getRecommendationsForProducts(missingIds).collect(Collectors.groupingBy(Recommendation::getProductId)), "recommendation"),
+                        orDegraded(integration.getReviewsForProducts(missingIds).collect(Collectors.groupingBy(Review::getProductId)), "review"))
+                .map(values -> {
+                    Map<Integer, ProductAggregate> aggregates = new HashMap<>();
+                    List<String> degraded = degradedServices(values.getT2(), values.getT3());
+                    values.getT1().forEach(product -> {
+                        int productId = product.getProductId();
+                        ProductAggregate aggregate = createProductAggregate(product,
+                                values.getT2().orElse(Map.of()).getOrDefault(productId, List.of()),
+                                values.getT3().orElse(Map.of()).getOrDefault(productId, List.of()),
+                                degraded,
+                                serviceUtil.getServiceAddress());
+                        aggregateCache.put(aggregate, startedAt);
+                        aggregates.put(productId, aggregate);
+                    });
+                    return aggregates;
+                });
+
+        return tracer.trace("getProducts", productIds.size(), loaded
+                .flatMapIterable(aggregates -> distinctIds.stream()
+                        .map(productId -> cached.containsKey(productId) ? cached.get(productId) : aggregates.get(productId))
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList()))
+                .doOnError(ex -> LOG.warn("getCompositeProducts failed: {}", ex.toString())));
     }
 
     @Override
@@ -87,15 +240,8 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
 
         try {
 
-            LOG.info("Will delete a product aggregate for product.id: {}", productId);
-
-            return Mono.zip(
-                            r -> "",
-                            integration.deleteProduct(productId),
-                            integration.deleteRecommendations(productId),
-                            integration.deleteReviews(productId))
-                    .doOnError(ex -> LOG.warn("delete failed: {}", ex.toString()))
-                    .log(LOG.getName(), FINE).then();
+            return tracer.trace("deleteProduct", productId, integration.deleteCompositeProduct(productId)
+                    .doOnError(ex -> LOG.warn("delete failed: {}", ex.toString())));
 
         } catch (RuntimeException re) {
             LOG.warn("deleteCompositeProduct failed: {}", re.toString());
@@ -103,7 +249,40 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         }
     }
 
-    private ProductAggregate createProductAggregate(Product product, List<Recommendation> recommendations, List<Review> reviews, String serviceAddress) {
+    /**
+     * Turns a failed or timed out call to a core service into an empty result, so the
+     * composite can still answer with the parts it got.
+     */
+    private <T> Mono<Optional<T>> orDegraded(Mono<T> result, String serviceName) {
+        return result.map(Optional::of)
+                .onErrorResume(ex -> {
+                    LOG.warn("Returns a partial response without {} info: {}", serviceName, ex.toString());
+                    return Mono.just(Optional.empty());
+                });
+    }
+
+    private List<String> degradedServices(Optional<?> recommendations, Optional<?> reviews) {
+        List<String> degraded = new ArrayList<>();
+        if (recommendations.isEmpty()) {
+            degraded.add("recommendation");
+        }
+        if (reviews.isEmpty()) {
+            degraded.add("review");
+        }
+        return degraded;
+    }
+
+    /**
+     * Tells the client how old the read model answer is: when the last event of the product was created,
+     * and how long after its creation that event was applied to the read model.
+     */
+    private void addStalenessHeaders(HttpHeaders headers, ProductReadModel.Entry entry) {
+        headers.set("X-Read-Model-Last-Event", entry.getLastEventCreatedAt().toString());
+        headers.set("X-Read-Model-Lag-Ms", Long.toString(entry.getLagMillis()));
+    }
+
+    // Package-private for the benchmarks
+    ProductAggregate createProductAggregate(Product product, List<Recommendation> recommendations, List<Review> reviews, List<String> degraded, String serviceAddress) {
 
         // 1. Setup product info
         int productId = product.getProductId();
@@ -126,7 +305,7 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         String productAddress = product.getServiceAddress();
         String reviewAddress = (reviews != null && reviews.size() > 0) ? reviews.get(0).getServiceAddress() : "";
         String recommendationAddress = (recommendations != null && recommendations.size() > 0) ? recommendations.get(0).getServiceAddress() : "";
-        ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddress, productAddress, reviewAddress, recommendationAddress);
+        ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddress, productAddress, reviewAddress, recommendationAddress, degraded);
 
         return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses);
     }
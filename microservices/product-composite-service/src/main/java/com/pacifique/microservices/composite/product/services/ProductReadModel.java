@@ -0,0 +1,214 @@
+package com.pacifique.microservices.composite.product.services;
+
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.event‎.Event;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Denormalized read model of the composite products, built from the events the core services have stored, see
+ * AcceptedEventsConfig, and kept in memory per productId. An event rejected by a core service, e.g. a duplicate
+ * create, is not applied.
+ *
+ * Every composite instance consumes all accepted events, in an anonymous consumer group. A product can be read
+ * from the read model once its CREATE event is applied. Products whose events were sent before the instance
+ * started are not in the read model, the composite then calls the core services instead.
+ *
+ * The read model keeps at most maximumSize products, the least recently used ones are evicted. An evicted product
+ * is read from the core services, events applied after the eviction can't make it complete again since it has no
+ * product until its next CREATE event.
+ */
+@Component
+public class ProductReadModel {
+    private static final Logger LOG = LoggerFactory.getLogger(ProductReadModel.class);
+
+    /**
+     * The state of one product. Recommendations and reviews can arrive before the product itself.
+     */
+    public static class Entry {
+        private static final Entry EMPTY = new Entry(null, Map.of(), Map.of(), null, 0);
+
+        private final Product product;
+        private final Map<Integer, Recommendation> recommendations;
+        private final Map<Integer, Review> reviews;
+        private final Instant lastEventCreatedAt;
+        private final long lagMillis;
+
+        private Entry(Product product, Map<Integer, Recommendation> recommendations, Map<Integer, Review> reviews, Instant lastEventCreatedAt, long lagMillis) {
+            this.product = product;
+            this.recommendations = recommendations;
+            this.reviews = reviews;
+            this.lastEventCreatedAt = lastEventCreatedAt;
+            this.lagMillis = lagMillis;
+        }
+
+        public Product getProduct() {
+            return product;
+        }
+
+        public List<Recommendation> getRecommendations() {
+            return new ArrayList<>(recommendations.values());
+        }
+
+        public List<Review> getReviews() {
+            return new ArrayList<>(reviews.values());
+        }
+
+        /**
+         * @return when the last applied event of the product was created
+         */
+        public Instant getLastEventCreatedAt() {
+            return lastEventCreatedAt;
+        }
+
+        /**
+         * @return the time from creating the last applied event of the product until it was applied, in ms
+         */
+        public long getLagMillis() {
+            return lagMillis;
+        }
+
+        private Entry withProduct(Product product) {
+            return new Entry(product, recommendations, reviews, lastEventCreatedAt, lagMillis);
+        }
+
+        private Entry withRecommendation(Recommendation recommendation) {
+            Map<Integer, Recommendation> updated = new TreeMap<>(recommendations);
+            updated.put(recommendation.getRecommendationId(), recommendation);
+            return new Entry(product, updated, reviews, lastEventCreatedAt, lagMillis);
+        }
+
+        private Entry withoutRecommendations() {
+            return new Entry(product, Map.of(), reviews, lastEventCreatedAt, lagMillis);
+        }
+
+        private Entry withReview(Review review) {
+            Map<Integer, Review> updated = new TreeMap<>(reviews);
+            updated.put(review.getReviewId(), review);
+            return new Entry(product, recommendations, updated, lastEventCreatedAt, lagMillis);
+        }
+
+        private Entry withoutReviews() {
+            return new Entry(product, recommendations, Map.of(), lastEventCreatedAt, lagMillis);
+        }
+
+        private Entry withAppliedEvent(Instant createdAt, Instant appliedAt) {
+            Instant last = (lastEventCreatedAt == null || createdAt.isAfter(lastEventCreatedAt)) ? createdAt : lastEventCreatedAt;
+            return new Entry(product, recommendations, reviews, last, Math.max(0, Duration.between(createdAt, appliedAt).toMillis()));
+        }
+
+        private boolean isEmpty() {
+            return product == null && recommendations.isEmpty() && reviews.isEmpty();
+        }
+    }
+
+    private final boolean enabled;
+    private final Cache<Integer, Entry> cache;
+    private final Map<Integer, Entry> entries;
+
+    @Autowired
+    public ProductReadModel(
+            @Value("${app.read-model.enabled:false}") boolean enabled,
+            @Value("${app.read-model.maximumSize:100000}") Long maximumSize,
+            MeterRegistry meterRegistry
+    ) {
+        LOG.info("Creates a product read model, enabled = {}, maximumSize = {}", enabled, maximumSize);
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        this.entries = cache.asMap();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "productReadModel");
+    }
+
+    /**
+     * @return the product if its CREATE event is applied, else null
+     */
+    public Entry get(int productId) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = cache.getIfPresent(productId);
+        return (entry != null && entry.getProduct() != null) ? entry : null;
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public void applyProductEvent(Event<Integer, Product> event) {
+        switch (event.getEventType()) {
+            case CREATE:
+                apply(event, entry -> entry.withProduct(event.getData()));
+                break;
+            case DELETE:
+                apply(event, entry -> entry.withProduct(null));
+                break;
+            default:
+                LOG.warn("Ignores a product event with incorrect type: {}", event.getEventType());
+        }
+    }
+
+    public void applyRecommendationEvent(Event<Integer, Recommendation> event) {
+        switch (event.getEventType()) {
+            case CREATE:
+                apply(event, entry -> entry.withRecommendation(event.getData()));
+                break;
+            case DELETE:
+                apply(event, Entry::withoutRecommendations);
+                break;
+            default:
+                LOG.warn("Ignores a recommendation event with incorrect type: {}", event.getEventType());
+        }
+    }
+
+    public void applyReviewEvent(Event<Integer, Review> event) {
+        switch (event.getEventType()) {
+            case CREATE:
+                apply(event, entry -> entry.withReview(event.getData()));
+                break;
+            case DELETE:
+                apply(event, Entry::withoutReviews);
+                break;
+            default:
+                LOG.warn("Ignores a review event with incorrect type: {}", event.getEventType());
+        }
+    }
+
+    private void apply(Event<Integer, ?> event, UnaryOperator<Entry> change) {
+        if (!enabled) {
+            return;
+        }
+        if (event.getKey() == null) {
+            LOG.warn("Ignores a {} event without a key", event.getEventType());
+            return;
+        }
+        Instant now = Instant.now();
+        Instant createdAt = event.getEventCreatedAt() == null ? now : event.getEventCreatedAt().toInstant();
+
+        // An entry without a product, recommendations and reviews is removed
+        entries.compute(event.getKey(), (productId, entry) -> {
+            Entry updated = change.apply(entry == null ? Entry.EMPTY : entry).withAppliedEvent(createdAt, now);
+            return updated.isEmpty() ? null : updated;
+        });
+        LOG.debug("Applied a {} event to the read model of productId: {}", event.getEventType(), event.getKey());
+    }
+}
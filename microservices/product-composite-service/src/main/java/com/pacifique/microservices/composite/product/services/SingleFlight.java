@@ -0,0 +1,45 @@
+package com.pacifique.microservices.composite.product.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent requests for the same key into one upstream request.
+ *
+ * The first caller for a key subscribes to the loader, callers arriving while that
+ * request is in flight share its result. The key is released as soon as the request
+ * terminates, so later callers always trigger a new request. After forget, e.g. when the
+ * value has changed, later callers trigger a new request while the earlier ones still share
+ * the request in flight.
+ */
+public class SingleFlight<K, V> {
+    private static final Logger LOG = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> {
+            LOG.debug("Starts a new request for key: {}", k);
+            AtomicReference<Mono<V>> request = new AtomicReference<>();
+            // Only removes its own request, not one started after a forget
+            request.set(loader.get()
+                    .doFinally(signal -> inFlight.remove(k, request.get()))
+                    .cache());
+            return request.get();
+        }));
+    }
+
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,88 @@
+package com.pacifique.microservices.composite.product;
+
+import com.pacifique.microservices.composite.product.services.CompositeMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompositeMetricsTests {
+
+    private MeterRegistry registry;
+    private CompositeMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new CompositeMetrics(registry);
+    }
+
+    @Test
+    void callsAreTaggedWithOutcomeAndStatus() {
+        StepVerifier.create(metrics.timeCall("product", "getProduct", Mono.just(1))).expectNext(1).verifyComplete();
+        StepVerifier.create(metrics.timeCall("product", "getProduct", Mono.error(
+                WebClientResponseException.create(HttpStatus.NOT_FOUND.value(), "Not Found", HttpHeaders.EMPTY, new byte[0], null)))).verifyError();
+        StepVerifier.create(metrics.timeCall("review", "getReviews", Flux.error(new TimeoutException()))).verifyError();
+
+        assertEquals(1, callCount("product", "getProduct", "SUCCESS", "2xx"));
+        assertEquals(1, callCount("product", "getProduct", "CLIENT_ERROR", "404"));
+        assertEquals(1, callCount("review", "getReviews", "TIMEOUT", "NONE"));
+    }
+
+    @Test
+    void callsAreTimedPerSubscription() {
+        Mono<Integer> call = metrics.timeCall("product", "getProduct", Mono.just(1));
+
+        StepVerifier.create(call).expectNext(1).verifyComplete();
+        StepVerifier.create(call).expectNext(1).verifyComplete();
+
+        assertEquals(2, callCount("product", "getProduct", "SUCCESS", "2xx"));
+    }
+
+    @Test
+    void publishesAreTaggedWithOutcome() {
+        metrics.timePublish("products-out-0", () -> { });
+        assertThrows(IllegalStateException.class, () -> metrics.timePublish("products-out-0", () -> {
+            throw new IllegalStateException("disk full");
+        }));
+
+        assertEquals(1, registry.get(CompositeMetrics.EVENT_PUBLISH).tags("binding", "products-out-0", "outcome", "SUCCESS").timer().count());
+        assertEquals(1, registry.get(CompositeMetrics.EVENT_PUBLISH).tags("binding", "products-out-0", "outcome", "ERROR").timer().count());
+    }
+
+    @Test
+    void slowestCallOfFanOutIsCritical() {
+        CompositeMetrics.FanOut fanOut = metrics.startFanOut();
+        Mono<Integer> product = fanOut.track("product", Mono.just(1));
+        Mono<Integer> reviews = fanOut.track("review", Mono.just(2).delayElement(Duration.ofMillis(50)));
+
+        StepVerifier.create(Mono.zip(product, reviews).transform(fanOut::timed)).expectNextCount(1).verifyComplete();
+
+        assertEquals(1, registry.get(CompositeMetrics.FAN_OUT).tags("outcome", "SUCCESS").timer().count());
+        assertEquals(1, registry.get(CompositeMetrics.FAN_OUT_DEPENDENCY).tags("service", "review", "critical", "true").timer().count());
+        assertEquals(1, registry.get(CompositeMetrics.FAN_OUT_DEPENDENCY).tags("service", "product", "critical", "false").timer().count());
+        assertNull(registry.find(CompositeMetrics.FAN_OUT_DEPENDENCY).tags("service", "product", "critical", "true").timer());
+        assertTrue(registry.get(CompositeMetrics.FAN_OUT_DEPENDENCY).tags("service", "review").timer().totalTime(TimeUnit.MILLISECONDS) >= 50);
+    }
+
+    private long callCount(String service, String method, String outcome, String status) {
+        return registry.get(CompositeMetrics.DOWNSTREAM_CALL)
+                .tags("service", service, "method", method, "outcome", outcome, "status", status)
+                .timer().count();
+    }
+}
@@ -0,0 +1,169 @@
+package com.pacifique.microservices.composite.product;
+
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.exceptions.InvalidInputException;
+import com.pacifique.microservices.api.exceptions.NotFoundException;
+import com.pacifique.microservices.composite.product.services.ProductCompositeIntegration;
+import com.pacifique.microservices.util.http.HttpErrorInfo;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The composite asks the core services for Smile, app.downstream.binary = true, and decodes their Smile responses,
+ * including the error bodies, with a stub of the core services that encodes like the core services do.
+ */
+@SpringBootTest(
+        properties = {
+                "eureka.client.enabled=false",
+                "app.outbox.directory=build/outbox/downstream-codec-tests",
+                "app.outbox.publisherConfirms=false",
+                "app.downstream.binary=true"}
+)
+@Import({TestChannelBinderConfiguration.class})
+class DownstreamCodecTests {
+
+    private static final int PRODUCT_ID_OK = 1;
+    private static final int PRODUCT_ID_NOT_FOUND = 13;
+    private static final int PRODUCT_ID_INVALID = -1;
+
+    private static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+    private static final MediaType SMILE_STREAM = MediaType.valueOf("application/stream+x-jackson-smile");
+
+    // The Accept header of the last request per path
+    private static final Map<String, String> ACCEPTED = new ConcurrentHashMap<>();
+    private static final HttpServer CORE_SERVICES = startCoreServices();
+
+    @Autowired
+    private ProductCompositeIntegration integration;
+
+    @DynamicPropertySource
+    static void coreServices(DynamicPropertyRegistry registry) {
+        String uri = "http://localhost:" + CORE_SERVICES.getAddress().getPort();
+        // Resolved by the load balanced WebClient without Eureka
+        for (String service : new String[]{"product", "recommendation", "review"}) {
+            registry.add("spring.cloud.discovery.client.simple.instances." + service + "[0].uri", () -> uri);
+        }
+    }
+
+    @AfterAll
+    static void stopCoreServices() {
+        CORE_SERVICES.stop(0);
+    }
+
+    @Test
+    void getProductAsSmile() {
+        StepVerifier.create(integration.getProduct(PRODUCT_ID_OK))
+                .assertNext(product -> {
+                    assertEquals(PRODUCT_ID_OK, product.getProductId());
+                    assertEquals("name", product.getName());
+                })
+                .verifyComplete();
+
+        assertTrue(ACCEPTED.get("/product/").startsWith(SMILE.toString()), ACCEPTED.get("/product/"));
+    }
+
+    @Test
+    void getReviewsAsSmileStream() {
+        StepVerifier.create(integration.getReviews(PRODUCT_ID_OK))
+                .assertNext(review -> assertEquals(1, review.getReviewId()))
+                .assertNext(review -> assertEquals(2, review.getReviewId()))
+                .verifyComplete();
+
+        assertTrue(ACCEPTED.get("/review").startsWith(SMILE_STREAM.toString()), ACCEPTED.get("/review"));
+    }
+
+    @Test
+    void decodesSmileErrorBodies() {
+        StepVerifier.create(integration.getProduct(PRODUCT_ID_NOT_FOUND))
+                .expectErrorSatisfies(ex -> {
+                    assertInstanceOf(NotFoundException.class, ex);
+                    // The message of the HttpErrorInfo in the body, not the one of the WebClientResponseException
+                    assertEquals("No product found for productId: " + PRODUCT_ID_NOT_FOUND, ex.getMessage());
+                })
+                .verify();
+
+        StepVerifier.create(integration.getProduct(PRODUCT_ID_INVALID))
+                .expectErrorSatisfies(ex -> {
+                    assertInstanceOf(InvalidInputException.class, ex);
+                    assertEquals("Invalid productId: " + PRODUCT_ID_INVALID, ex.getMessage());
+                })
+                .verify();
+    }
+
+    /**
+     * Answers with Smile, encoded with the WebFlux Smile encoder the core services use.
+     */
+    private static HttpServer startCoreServices() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/product/", exchange -> {
+                ACCEPTED.put("/product/", exchange.getRequestHeaders().getFirst("Accept"));
+                int productId = Integer.parseInt(exchange.getRequestURI().getPath().substring("/product/".length()));
+                String path = exchange.getRequestURI().getPath();
+                if (productId == PRODUCT_ID_NOT_FOUND) {
+                    respond(exchange, 404, SMILE, Mono.just(new HttpErrorInfo(HttpStatus.NOT_FOUND, path, "No product found for productId: " + productId)), HttpErrorInfo.class);
+                } else if (productId < 0) {
+                    respond(exchange, 422, SMILE, Mono.just(new HttpErrorInfo(HttpStatus.UNPROCESSABLE_ENTITY, path, "Invalid productId: " + productId)), HttpErrorInfo.class);
+                } else {
+                    respond(exchange, 200, SMILE, Mono.just(new Product(productId, "name", 1, "stub")), Product.class);
+                }
+            });
+            server.createContext("/review", exchange -> {
+                ACCEPTED.put("/review", exchange.getRequestHeaders().getFirst("Accept"));
+                respond(exchange, 200, SMILE_STREAM, Flux.fromIterable(List.of(
+                        new Review(PRODUCT_ID_OK, 1, "a", "s", "c", "stub"),
+                        new Review(PRODUCT_ID_OK, 2, "a", "s", "c", "stub"))), Review.class);
+            });
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, MediaType mediaType, Publisher<?> body, Class<?> type) throws IOException {
+        DataBuffer encoded = DataBufferUtils.join(new Jackson2SmileEncoder().encode(
+                body, DefaultDataBufferFactory.sharedInstance, ResolvableType.forClass(type), mediaType, Map.of())).block();
+        byte[] bytes = new byte[encoded.readableByteCount()];
+        encoded.read(bytes);
+        DataBufferUtils.release(encoded);
+
+        exchange.getResponseHeaders().add("Content-Type", mediaType.toString());
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
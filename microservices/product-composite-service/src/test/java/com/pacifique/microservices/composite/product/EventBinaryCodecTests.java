@@ -0,0 +1,86 @@
+package com.pacifique.microservices.composite.product;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.event‎.Event;
+import com.pacifique.microservices.util.messaging.EventBinaryCodec;
+import com.pacifique.microservices.util.messaging.EventBinaryMessageConverter;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Arrays;
+
+import static com.pacifique.microservices.api.event‎.Event.Type.CREATE;
+import static com.pacifique.microservices.api.event‎.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventBinaryCodecTests {
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void encodesAndDecodesEvents() {
+        assertRoundTrip(new Event<>(new Product(1, "name", 100, null), 1, CREATE));
+        assertRoundTrip(new Event<>(new Recommendation(1, 2, "author", 5, "content", "address"), 1, CREATE));
+        assertRoundTrip(new Event<>(new Review(-1, Integer.MAX_VALUE, "åäö", null, "", "address"), Integer.MIN_VALUE, CREATE));
+        assertRoundTrip(new Event<>(null, 1, DELETE));
+    }
+
+    @Test
+    void isSmallerThanJson() throws Exception {
+        Event<Integer, Review> event = new Event<>(new Review(1, 1, "author", "subject", "content", null), 1, CREATE);
+
+        byte[] binary = EventBinaryCodec.encode(event);
+        byte[] json = mapper.writeValueAsBytes(event);
+
+        assertTrue(EventBinaryCodec.isBinary(binary));
+        assertFalse(EventBinaryCodec.isBinary(json));
+        assertTrue(binary.length * 2 < json.length, "binary: " + binary.length + " bytes, json: " + json.length + " bytes");
+    }
+
+    @Test
+    void rejectsTruncatedEvents() {
+        byte[] encoded = EventBinaryCodec.encode(new Event<>(new Product(1, "name", 100, null), 1, CREATE));
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 3);
+
+        assertThrows(IllegalArgumentException.class, () -> EventBinaryCodec.decode(truncated));
+    }
+
+    @Test
+    void convertsOnlyBinaryMessages() throws Exception {
+        EventBinaryMessageConverter converter = new EventBinaryMessageConverter();
+        Event<Integer, Product> event = new Event<>(new Product(1, "name", 100, null), 1, CREATE);
+
+        Message<byte[]> binary = MessageBuilder.withPayload(EventBinaryCodec.encode(event))
+                .setHeader(MessageHeaders.CONTENT_TYPE, EventBinaryCodec.MIME_TYPE_VALUE)
+                .build();
+        Event<?, ?> converted = (Event<?, ?>) converter.fromMessage(binary, Event.class);
+        assertEquals(event.getData(), converted.getData());
+
+        // JSON messages are left to the JSON converter
+        Message<byte[]> json = MessageBuilder.withPayload(mapper.writeValueAsBytes(event))
+                .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON_VALUE)
+                .build();
+        assertNull(converter.fromMessage(json, Event.class));
+    }
+
+    private void assertRoundTrip(Event<Integer, ?> event) {
+        Event<Integer, Object> decoded = EventBinaryCodec.decode(EventBinaryCodec.encode(event));
+
+        assertEquals(event.getEventType(), decoded.getEventType());
+        assertEquals(event.getKey(), decoded.getKey());
+        assertEquals(event.getData(), decoded.getData());
+        assertEquals(event.getEventCreatedAt().toInstant(), decoded.getEventCreatedAt().toInstant());
+        assertEquals(event.getEventCreatedAt().getOffset(), decoded.getEventCreatedAt().getOffset());
+    }
+}
@@ -0,0 +1,175 @@
+package com.pacifique.microservices.composite.product;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.event‎.Event;
+import com.pacifique.microservices.composite.product.services.EventOutbox;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static com.pacifique.microservices.api.event‎.Event.Type.CREATE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The relay of the outbox with publisher confirms, the confirms of the sent messages are completed by the tests.
+ * Each event is sent in its own batch.
+ */
+class EventOutboxTests {
+
+    private static final long WAIT_MILLIS = 5000;
+
+    @TempDir
+    Path directory;
+
+    private final BlockingQueue<Message<?>> sent = new LinkedBlockingQueue<>();
+    private EventOutbox outbox;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (outbox != null) {
+            outbox.stop();
+        }
+    }
+
+    @Test
+    void commitsBatchesInOrderWhenConfirmedOutOfOrder() throws Exception {
+        outbox = startOutbox(5000);
+        outbox.append("products-out-0", event(1));
+        outbox.append("products-out-0", event(2));
+        outbox.append("products-out-0", event(3));
+
+        Message<?> first = nextSent();
+        Message<?> second = nextSent();
+        Message<?> third = nextSent();
+
+        // The later batches are confirmed, the oldest one is not
+        confirm(third, true);
+        confirm(second, true);
+        Thread.sleep(100);
+        assertNull(committedPosition());
+        assertFalse(outbox.isDrained());
+
+        confirm(first, true);
+        await(outbox::isDrained);
+        assertEquals(Files.size(segment()), (long) committedPosition());
+        assertNull(sent.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void sendsEventsAfterLastCommitAgainWhenNacked() throws Exception {
+        outbox = startOutbox(5000);
+        outbox.append("products-out-0", event(1));
+        outbox.append("products-out-0", event(2));
+
+        Message<?> first = nextSent();
+        Message<?> second = nextSent();
+
+        confirm(first, true);
+        await(() -> committedPosition() != null);
+        long committed = committedPosition();
+
+        confirm(second, false);
+        Message<?> redelivered = nextSent();
+        assertArrayEquals((byte[]) second.getPayload(), (byte[]) redelivered.getPayload());
+        assertNotSame(correlation(second), correlation(redelivered));
+        assertEquals(committed, (long) committedPosition());
+        assertFalse(outbox.isDrained());
+
+        confirm(redelivered, true);
+        await(outbox::isDrained);
+        assertEquals(Files.size(segment()), (long) committedPosition());
+    }
+
+    @Test
+    void sendsEventAgainWhenNotConfirmedInTime() throws Exception {
+        outbox = startOutbox(200);
+        outbox.append("products-out-0", event(1));
+
+        Message<?> first = nextSent();
+        Message<?> redelivered = nextSent();
+        assertArrayEquals((byte[]) first.getPayload(), (byte[]) redelivered.getPayload());
+        assertNull(committedPosition());
+
+        confirm(redelivered, true);
+        await(outbox::isDrained);
+        assertEquals(Files.size(segment()), (long) committedPosition());
+    }
+
+    private EventOutbox startOutbox(int confirmTimeoutMs) {
+        StreamBridge streamBridge = mock(StreamBridge.class);
+        when(streamBridge.send(anyString(), any())).thenAnswer(invocation -> sent.add(invocation.getArgument(1)));
+
+        EventOutbox eventOutbox = new EventOutbox(streamBridge, new ObjectMapper().registerModule(new JavaTimeModule()), new SimpleMeterRegistry(),
+                directory.toString(), 1024L * 1024, 1, 0, 8, 10, true, confirmTimeoutMs, 10, false);
+        eventOutbox.start();
+        return eventOutbox;
+    }
+
+    private Message<?> nextSent() throws InterruptedException {
+        Message<?> message = sent.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        assertNotNull(message, "No event was sent within " + WAIT_MILLIS + " ms");
+        return message;
+    }
+
+    private static CorrelationData correlation(Message<?> message) {
+        CorrelationData correlation = (CorrelationData) message.getHeaders().get(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION);
+        assertNotNull(correlation);
+        return correlation;
+    }
+
+    private static void confirm(Message<?> message, boolean ack) {
+        correlation(message).getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+    }
+
+    private Long committedPosition() {
+        Path checkpoint = directory.resolve("committed.checkpoint");
+        try {
+            return Files.exists(checkpoint) ? Long.parseLong(Files.readString(checkpoint, StandardCharsets.US_ASCII).trim()) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segment() {
+        return directory.resolve(String.format("%020d.log", 0));
+    }
+
+    private static Event<Integer, Product> event(int productId) {
+        return new Event<>(new Product(productId, "name", 1, null), productId, CREATE);
+    }
+
+    private static void await(BooleanSupplier condition) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "The condition was not met within " + WAIT_MILLIS + " ms");
+            Thread.sleep(10);
+        }
+    }
+}
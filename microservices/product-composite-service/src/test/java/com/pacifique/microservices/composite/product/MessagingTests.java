@@ -7,17 +7,21 @@ import com.pacifique.microservices.api.core.product.Product;
 import com.pacifique.microservices.api.core.recommendation.Recommendation;
 import com.pacifique.microservices.api.core.review.Review;
 import com.pacifique.microservices.api.event‎.Event;
+import com.pacifique.microservices.composite.product.services.EventOutbox;
+import com.pacifique.microservices.composite.product.services.ProductAggregateCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.InputDestination;
 import org.springframework.cloud.stream.binder.test.OutputDestination;
 import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpStatus;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 import java.util.ArrayList;
@@ -30,13 +34,19 @@ import static java.util.Collections.singletonList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.ACCEPTED;
 import static reactor.core.publisher.Mono.just;
 
 @SpringBootTest(
         webEnvironment = RANDOM_PORT,
-        properties = {"spring.main.allow-bean-definition-overriding=true"}
+        properties = {
+                "spring.main.allow-bean-definition-overriding=true",
+                "app.outbox.directory=build/outbox/messaging-tests",
+                "app.outbox.publisherConfirms=false"}
 )
 @Import({TestChannelBinderConfiguration.class})
 public class MessagingTests {
@@ -47,6 +57,15 @@ public class MessagingTests {
     @Autowired
     private OutputDestination target;
 
+    @Autowired
+    private InputDestination input;
+
+    @Autowired
+    private ProductAggregateCache aggregateCache;
+
+    @Autowired
+    private EventOutbox outbox;
+
     @BeforeEach
     void setUp() {
         purgeMessages("products");
@@ -111,6 +130,30 @@ public class MessagingTests {
 
     }
 
+    @Test
+    void createCompositeProductWithManyEvents() {
+        List<RecommendationSummary> recommendations = new ArrayList<>();
+        List<ReviewSummary> reviews = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            recommendations.add(new RecommendationSummary(i, "a", 1, "c"));
+            reviews.add(new ReviewSummary(i, "a", "s", "c"));
+        }
+        ProductAggregate composite = new ProductAggregate(1, "name", 1, recommendations, reviews, null);
+        postAndVerifyProduct(composite, ACCEPTED);
+
+        assertEquals(1, getMessages("products").size());
+
+        // The events are sent in the order they were created
+        List<String> reviewMessages = getMessages("reviews");
+        assertEquals(20, reviewMessages.size());
+        ReviewSummary rev = reviews.get(19);
+        Event<Integer, Review> expectedReviewEvent =
+                new Event(new Review(composite.getProductId(), rev.getReviewId(), rev.getAuthor(), rev.getSubject(), rev.getContent(), null), composite.getProductId(), CREATE);
+        assertThat(reviewMessages.get(19), is(sameEventExceptCreatedAt(expectedReviewEvent)));
+
+        assertEquals(20, getMessages("recommendations").size());
+    }
+
     @Test
     void deleteCompositeProduct() {
         deleteAndVerifyProduct(1, ACCEPTED);
@@ -138,11 +181,30 @@ public class MessagingTests {
         assertThat(reviewMessages.get(0), is(sameEventExceptCreatedAt(expectedReviewEvent)));
     }
 
+    @Test
+    void acceptedEventInvalidatesCache() {
+        aggregateCache.put(new ProductAggregate(1, "name", 1, null, null, null), aggregateCache.generation());
+        assertNotNull(aggregateCache.getIfPresent(1));
+
+        // The core services have not applied the delete yet
+        deleteAndVerifyProduct(1, ACCEPTED);
+        assertNotNull(aggregateCache.getIfPresent(1));
+
+        input.send(MessageBuilder.withPayload(new Event(null, 1, DELETE)).build(), "products.accepted");
+        assertNull(aggregateCache.getIfPresent(1));
+
+        // Accepted recommendation and review events invalidate the product's aggregate as well
+        aggregateCache.put(new ProductAggregate(1, "name", 1, null, null, null), aggregateCache.generation());
+        input.send(MessageBuilder.withPayload(new Event(null, 1, DELETE)).build(), "reviews.accepted");
+        assertNull(aggregateCache.getIfPresent(1));
+    }
+
     private void purgeMessages(String bindingName) {
         getMessages(bindingName);
     }
 
     private List<String> getMessages(String bindingName){
+        awaitOutboxDrained();
         List<String> messages = new ArrayList<>();
         boolean anyMoreMessages = true;
 
@@ -158,6 +220,21 @@ public class MessagingTests {
     }
 
 
+    private void awaitOutboxDrained() {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!outbox.isDrained()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("The outbox was not drained in time");
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted while waiting for the outbox");
+            }
+        }
+    }
+
     private Message<byte[]> getMessage(String bindingName){
         try {
             return target.receive(0,bindingName);
@@ -0,0 +1,140 @@
+package com.pacifique.microservices.composite.product;
+
+import com.pacifique.microservices.composite.product.services.OutboxLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutboxLogTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsAppendedRecordsUntilCommitted() throws IOException {
+        try (OutboxLog log = new OutboxLog(directory, 1024)) {
+            log.append("a".getBytes(UTF_8));
+            log.append("b".getBytes(UTF_8));
+            log.append("c".getBytes(UTF_8));
+
+            List<OutboxLog.Record> records = log.read(2);
+            assertEquals(2, records.size());
+            assertEquals("a", new String(records.get(0).getPayload(), UTF_8));
+            assertEquals("b", new String(records.get(1).getPayload(), UTF_8));
+
+            // Not committed records are read again after a rewind
+            assertEquals(1, log.read(2).size());
+            log.rewind();
+            assertEquals(2, log.read(2).size());
+
+            log.commit(records.get(1).getEndPosition());
+            log.rewind();
+            records = log.read(2);
+            assertEquals(1, records.size());
+            assertEquals("c", new String(records.get(0).getPayload(), UTF_8));
+
+            log.commit(records.get(0).getEndPosition());
+            assertEquals(0, log.pendingBytes());
+        }
+    }
+
+    @Test
+    void keepsNotCommittedRecordsWhenReopened() throws IOException {
+        try (OutboxLog log = new OutboxLog(directory, 1024)) {
+            log.append("a".getBytes(UTF_8));
+            log.append("b".getBytes(UTF_8));
+            log.commit(log.read(1).get(0).getEndPosition());
+        }
+
+        try (OutboxLog log = new OutboxLog(directory, 1024)) {
+            List<OutboxLog.Record> records = log.read(10);
+            assertEquals(1, records.size());
+            assertEquals("b", new String(records.get(0).getPayload(), UTF_8));
+        }
+    }
+
+    @Test
+    void relaysAllRecordsWhenCheckpointIsEmptyOrCorrupt() throws IOException {
+        try (OutboxLog log = new OutboxLog(directory, 1024)) {
+            log.append("a".getBytes(UTF_8));
+            log.append("b".getBytes(UTF_8));
+            log.commit(log.read(1).get(0).getEndPosition());
+        }
+
+        // E.g. a checkpoint that was not on disk when the host crashed
+        for (String checkpoint : new String[]{"", "12x"}) {
+            Files.writeString(directory.resolve("committed.checkpoint"), checkpoint, UTF_8);
+            try (OutboxLog log = new OutboxLog(directory, 1024)) {
+                assertEquals(2, log.read(10).size());
+            }
+        }
+    }
+
+    @Test
+    void dropsPartlyWrittenRecordWhenReopened() throws IOException {
+        try (OutboxLog log = new OutboxLog(directory, 1024)) {
+            log.append("a".getBytes(UTF_8));
+        }
+        Path segment = segmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segment, WRITE)) {
+            // A record header that claims more bytes than were written
+            channel.write(ByteBuffer.allocate(8).putInt(100).putInt(0).flip(), channel.size());
+        }
+
+        try (OutboxLog log = new OutboxLog(directory, 1024)) {
+            log.append("b".getBytes(UTF_8));
+            List<OutboxLog.Record> records = log.read(10);
+            assertEquals(2, records.size());
+            assertEquals("a", new String(records.get(0).getPayload(), UTF_8));
+            assertEquals("b", new String(records.get(1).getPayload(), UTF_8));
+        }
+    }
+
+    @Test
+    void appendsSeveralRecordsAtOnce() throws IOException {
+        try (OutboxLog log = new OutboxLog(directory, 1024)) {
+            log.append(List.of("a".getBytes(UTF_8), "b".getBytes(UTF_8), "c".getBytes(UTF_8)));
+
+            List<OutboxLog.Record> records = log.read(10);
+            assertEquals(3, records.size());
+            assertEquals("c", new String(records.get(2).getPayload(), UTF_8));
+            assertEquals(records.get(2).getEndPosition(), log.pendingBytes());
+        }
+    }
+
+    @Test
+    void deletesCommittedSegments() throws IOException {
+        try (OutboxLog log = new OutboxLog(directory, 64)) {
+            for (int i = 0; i < 20; i++) {
+                log.append(("record " + i).getBytes(UTF_8));
+            }
+            assertTrue(segmentFiles().size() > 1);
+
+            List<OutboxLog.Record> records = log.read(100);
+            assertEquals(20, records.size());
+            assertEquals("record 19", new String(records.get(19).getPayload(), UTF_8));
+
+            log.commit(records.get(19).getEndPosition());
+            assertEquals(1, segmentFiles().size());
+            assertEquals(0, log.pendingBytes());
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+}
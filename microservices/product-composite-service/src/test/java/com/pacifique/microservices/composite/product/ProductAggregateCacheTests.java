@@ -0,0 +1,77 @@
+package com.pacifique.microservices.composite.product;
+
+import com.pacifique.microservices.api.composite.product.ProductAggregate;
+import com.pacifique.microservices.api.composite.product.ServiceAddresses;
+import com.pacifique.microservices.composite.product.services.ProductAggregateCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ProductAggregateCacheTests {
+
+    private ProductAggregateCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ProductAggregateCache(true, 100L, 30, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void loadStartedBeforeInvalidationIsNotCached() {
+        AtomicInteger fanOuts = new AtomicInteger();
+        Sinks.One<ProductAggregate> stale = Sinks.one();
+
+        StepVerifier.create(cache.load(1, () -> {
+                    fanOuts.incrementAndGet();
+                    return stale.asMono();
+                }))
+                .then(() -> {
+                    cache.invalidate(1);
+                    // A caller after the invalidation does not join the stale fan-out
+                    assertEquals("fresh", cache.load(1, () -> {
+                        fanOuts.incrementAndGet();
+                        return Mono.just(aggregate(1, "fresh"));
+                    }).block().getName());
+                    stale.tryEmitValue(aggregate(1, "stale"));
+                })
+                .expectNextMatches(aggregate -> aggregate.getName().equals("stale"))
+                .verifyComplete();
+
+        assertEquals(2, fanOuts.get());
+        assertEquals("fresh", cache.getIfPresent(1).getName());
+    }
+
+    @Test
+    void putAfterInvalidationIsSkipped() {
+        long startedAt = cache.generation();
+        cache.invalidate(1);
+
+        cache.put(aggregate(1, "stale"), startedAt);
+        assertNull(cache.getIfPresent(1));
+
+        cache.put(aggregate(1, "fresh"), cache.generation());
+        assertEquals("fresh", cache.getIfPresent(1).getName());
+    }
+
+    @Test
+    void degradedAggregateIsNotCached() {
+        ServiceAddresses addresses = new ServiceAddresses("composite", "product", null, null, List.of("review"));
+
+        cache.put(new ProductAggregate(1, "name", 1, List.of(), List.of(), addresses), cache.generation());
+
+        assertNull(cache.getIfPresent(1));
+    }
+
+    private static ProductAggregate aggregate(int productId, String name) {
+        return new ProductAggregate(productId, name, 1, null, null, null);
+    }
+}
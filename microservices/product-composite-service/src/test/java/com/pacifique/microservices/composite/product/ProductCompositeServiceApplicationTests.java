@@ -1,11 +1,18 @@
 package com.pacifique.microservices.composite.product;
 
 import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 
+import com.pacifique.microservices.api.composite.product.ProductAggregatePart;
+import com.pacifique.microservices.composite.product.services.ProductAggregateCache;
 import com.pacifique.microservices.composite.product.services.ProductCompositeIntegration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,22 +23,34 @@ import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 import com.pacifique.microservices.api.core.product.Product;
 import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.recommendation.RecommendationPage;
 import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.core.review.ReviewPage;
+import com.pacifique.microservices.api.core.review.ReviewStatistics;
 import com.pacifique.microservices.api.exceptions.InvalidInputException;
 import com.pacifique.microservices.api.exceptions.NotFoundException;
 
-@SpringBootTest(webEnvironment = RANDOM_PORT,properties = "eureka.client.enabled=false")
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT,properties = {"eureka.client.enabled=false", "app.outbox.directory=build/outbox/application-tests"})
 class ProductCompositeServiceApplicationTests {
 
     private static final int PRODUCT_ID_OK = 1;
     private static final int PRODUCT_ID_NOT_FOUND = 2;
     private static final int PRODUCT_ID_INVALID = 3;
+    private static final int PRODUCT_ID_REVIEWS_TIMEOUT = 4;
 
     @Autowired
     private WebTestClient client;
 
+    @Autowired
+    private ProductAggregateCache aggregateCache;
+
     @MockBean
     private ProductCompositeIntegration compositeIntegration;
 
@@ -47,6 +66,38 @@ class ProductCompositeServiceApplicationTests {
         when(compositeIntegration.getReviews(PRODUCT_ID_OK))
                 .thenReturn(Flux.fromIterable(singletonList(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address"))));
 
+        when(compositeIntegration.getProducts(List.of(PRODUCT_ID_OK, PRODUCT_ID_NOT_FOUND)))
+                .thenReturn(Flux.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
+
+        when(compositeIntegration.getRecommendationsForProducts(anyList()))
+                .thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address")));
+
+        when(compositeIntegration.getReviewsForProducts(anyList()))
+                .thenReturn(Flux.just(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address")));
+
+        when(compositeIntegration.getProduct(PRODUCT_ID_REVIEWS_TIMEOUT))
+                .thenReturn(Mono.just(new Product(PRODUCT_ID_REVIEWS_TIMEOUT, "name", 1, "mock-address")));
+
+        when(compositeIntegration.getRecommendations(PRODUCT_ID_REVIEWS_TIMEOUT))
+                .thenReturn(Flux.just(new Recommendation(PRODUCT_ID_REVIEWS_TIMEOUT, 1, "author", 1, "content", "mock address")));
+
+        when(compositeIntegration.getReviews(PRODUCT_ID_REVIEWS_TIMEOUT))
+                .thenReturn(Flux.error(new TimeoutException("No response from review")));
+
+        when(compositeIntegration.getReviewPage(PRODUCT_ID_OK, 1, null))
+                .thenReturn(Mono.just(new ReviewPage(List.of(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address")), "next-review")));
+
+        when(compositeIntegration.getRecommendationPage(PRODUCT_ID_OK, 20, null))
+                .thenReturn(Mono.just(new RecommendationPage(List.of(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address")), null)));
+
+        when(compositeIntegration.getReviewPage(PRODUCT_ID_OK, 1, "invalid"))
+                .thenReturn(Mono.error(new InvalidInputException("Invalid cursor: invalid for productId: " + PRODUCT_ID_OK)));
+
+        when(compositeIntegration.getReviewStatisticsForProducts(List.of(PRODUCT_ID_OK, PRODUCT_ID_NOT_FOUND)))
+                .thenReturn(Flux.just(
+                        new ReviewStatistics(PRODUCT_ID_OK, 2, 2, Instant.now()),
+                        new ReviewStatistics(PRODUCT_ID_NOT_FOUND, 0, 0, null)));
+
         when(compositeIntegration.getProduct(PRODUCT_ID_NOT_FOUND)).thenThrow(new NotFoundException("NOT FOUND: " + PRODUCT_ID_NOT_FOUND));
 
         when(compositeIntegration.getProduct(PRODUCT_ID_INVALID)).thenThrow(new InvalidInputException("INVALID: " + PRODUCT_ID_INVALID));
@@ -65,6 +116,105 @@ class ProductCompositeServiceApplicationTests {
                 .jsonPath("$.reviews.length()").isEqualTo(1);
     }
 
+    @Test
+    void getProductPartialResponse() {
+
+        getAndVerifyProduct(PRODUCT_ID_REVIEWS_TIMEOUT, OK)
+                .jsonPath("$.productId").isEqualTo(PRODUCT_ID_REVIEWS_TIMEOUT)
+                .jsonPath("$.recommendations.length()").isEqualTo(1)
+                .jsonPath("$.reviews.length()").isEqualTo(0)
+                .jsonPath("$.serviceAddresses.degraded[0]").isEqualTo("review");
+
+        // Partial responses are not cached
+        assertNull(aggregateCache.getIfPresent(PRODUCT_ID_REVIEWS_TIMEOUT));
+    }
+
+    @Test
+    void getProductFromCache() {
+
+        aggregateCache.invalidate(PRODUCT_ID_OK);
+
+        getAndVerifyProduct(PRODUCT_ID_OK, OK)
+                .jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK);
+        getAndVerifyProduct(PRODUCT_ID_OK, OK)
+                .jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
+                .jsonPath("$.reviews.length()").isEqualTo(1);
+
+        // The second call is served from the cache without any calls to the core services
+        verify(compositeIntegration, times(1)).getProduct(PRODUCT_ID_OK);
+        verify(compositeIntegration, times(1)).getRecommendations(PRODUCT_ID_OK);
+        verify(compositeIntegration, times(1)).getReviews(PRODUCT_ID_OK);
+    }
+
+    @Test
+    void streamProductById() {
+
+        Flux<ProductAggregatePart> parts = client.get()
+                .uri("/product-composite/" + PRODUCT_ID_OK + "/stream")
+                .accept(APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().contentType(APPLICATION_NDJSON)
+                .returnResult(ProductAggregatePart.class)
+                .getResponseBody();
+
+        StepVerifier.create(parts)
+                .expectNextMatches(p -> p.getType() == ProductAggregatePart.Type.PRODUCT && p.getProductId() == PRODUCT_ID_OK)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void getProductsByIds() {
+
+        aggregateCache.invalidate(PRODUCT_ID_OK);
+
+        client.get()
+                .uri("/product-composite?ids=" + PRODUCT_ID_OK + "," + PRODUCT_ID_NOT_FOUND)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().contentType(APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].productId").isEqualTo(PRODUCT_ID_OK)
+                .jsonPath("$[0].recommendations.length()").isEqualTo(1)
+                .jsonPath("$[0].reviews.length()").isEqualTo(1);
+
+        verify(compositeIntegration, times(1)).getProducts(List.of(PRODUCT_ID_OK, PRODUCT_ID_NOT_FOUND));
+    }
+
+    @Test
+    void getProductReviewPage() {
+
+        getAndVerifyPage("/product-composite/" + PRODUCT_ID_OK + "/reviews?limit=1", OK)
+                .jsonPath("$.reviews.length()").isEqualTo(1)
+                .jsonPath("$.reviews[0].reviewId").isEqualTo(1)
+                .jsonPath("$.nextCursor").isEqualTo("next-review");
+
+        getAndVerifyPage("/product-composite/" + PRODUCT_ID_OK + "/reviews?limit=1&cursor=invalid", UNPROCESSABLE_ENTITY)
+                .jsonPath("$.message").isEqualTo("Invalid cursor: invalid for productId: " + PRODUCT_ID_OK);
+    }
+
+    @Test
+    void getProductRecommendationPage() {
+
+        // Without a limit, the default page size is used
+        getAndVerifyPage("/product-composite/" + PRODUCT_ID_OK + "/recommendations", OK)
+                .jsonPath("$.recommendations.length()").isEqualTo(1)
+                .jsonPath("$.nextCursor").doesNotExist();
+    }
+
+    @Test
+    void getReviewStatistics() {
+
+        getAndVerifyPage("/product-composite/review-statistics?ids=" + PRODUCT_ID_OK + "," + PRODUCT_ID_NOT_FOUND, OK)
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].count").isEqualTo(2)
+                .jsonPath("$[0].latestReviewId").isEqualTo(2)
+                .jsonPath("$[1].count").isEqualTo(0);
+    }
+
     @Test
     void getProductNotFound() {
 
@@ -81,6 +231,16 @@ class ProductCompositeServiceApplicationTests {
                 .jsonPath("$.message").isEqualTo("INVALID: " + PRODUCT_ID_INVALID);
     }
 
+    private WebTestClient.BodyContentSpec getAndVerifyPage(String uri, HttpStatus expectedStatus) {
+        return client.get()
+                .uri(uri)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(expectedStatus)
+                .expectHeader().contentType(APPLICATION_JSON)
+                .expectBody();
+    }
+
     private WebTestClient.BodyContentSpec getAndVerifyProduct(int productId, HttpStatus expectedStatus) {
         return client.get()
                 .uri("/product-composite/" + productId)
@@ -0,0 +1,118 @@
+package com.pacifique.microservices.composite.product;
+
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.event‎.Event;
+import com.pacifique.microservices.api.exceptions.NotFoundException;
+import com.pacifique.microservices.composite.product.services.CompositeMetrics;
+import com.pacifique.microservices.composite.product.services.ProductCompositeIntegration;
+import com.pacifique.microservices.composite.product.services.ProductReadModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cloud.stream.binder.test.InputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static com.pacifique.microservices.api.event‎.Event.Type.CREATE;
+import static com.pacifique.microservices.api.event‎.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+@SpringBootTest(
+        webEnvironment = RANDOM_PORT,
+        properties = {
+                "eureka.client.enabled=false",
+                "app.outbox.directory=build/outbox/read-model-tests",
+                "app.outbox.publisherConfirms=false",
+                "app.read-model.enabled=true",
+                "app.aggregate-cache.enabled=false"}
+)
+@Import({TestChannelBinderConfiguration.class})
+class ReadModelTests {
+
+    private static final int PRODUCT_ID = 1;
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private InputDestination input;
+
+    @Autowired
+    private ProductReadModel readModel;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private ProductCompositeIntegration compositeIntegration;
+
+    @BeforeEach
+    void setUp() {
+        when(compositeIntegration.getProduct(anyInt())).thenThrow(new NotFoundException("NOT FOUND"));
+
+        send("products.accepted", new Event<>(null, PRODUCT_ID, DELETE));
+        send("recommendations.accepted", new Event<>(null, PRODUCT_ID, DELETE));
+        send("reviews.accepted", new Event<>(null, PRODUCT_ID, DELETE));
+    }
+
+    @Test
+    void getProductFromReadModel() {
+        send("products.accepted", new Event<>(new Product(PRODUCT_ID, "name", 1, null), PRODUCT_ID, CREATE));
+        send("recommendations.accepted", new Event<>(new Recommendation(PRODUCT_ID, 1, "a", 1, "c", null), PRODUCT_ID, CREATE));
+        send("recommendations.accepted", new Event<>(new Recommendation(PRODUCT_ID, 2, "a", 2, "c", null), PRODUCT_ID, CREATE));
+        send("reviews.accepted", new Event<>(new Review(PRODUCT_ID, 1, "a", "s", "c", null), PRODUCT_ID, CREATE));
+        double readsBefore = readModelReads();
+
+        client.get().uri("/product-composite/" + PRODUCT_ID)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists("X-Read-Model-Last-Event")
+                .expectHeader().exists("X-Read-Model-Lag-Ms")
+                .expectBody()
+                .jsonPath("$.productId").isEqualTo(PRODUCT_ID)
+                .jsonPath("$.recommendations.length()").isEqualTo(2)
+                .jsonPath("$.reviews.length()").isEqualTo(1);
+
+        verify(compositeIntegration, never()).getProduct(anyInt());
+        assertEquals(readsBefore + 1, readModelReads());
+    }
+
+    @Test
+    void deletedProductIsNotInReadModel() {
+        send("products.accepted", new Event<>(new Product(PRODUCT_ID, "name", 1, null), PRODUCT_ID, CREATE));
+        send("reviews.accepted", new Event<>(new Review(PRODUCT_ID, 1, "a", "s", "c", null), PRODUCT_ID, CREATE));
+
+        send("products.accepted", new Event<>(null, PRODUCT_ID, DELETE));
+        assertNull(readModel.get(PRODUCT_ID));
+
+        // Without the product in the read model, the core services are called
+        client.get().uri("/product-composite/" + PRODUCT_ID)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectHeader().doesNotExist("X-Read-Model-Last-Event");
+    }
+
+    private double readModelReads() {
+        return meterRegistry.counter(CompositeMetrics.PRODUCT_READ, "source", CompositeMetrics.READ_MODEL).count();
+    }
+
+    private void send(String destination, Event<Integer, ?> event) {
+        input.send(MessageBuilder.withPayload(event).build(), destination);
+    }
+}
@@ -0,0 +1,306 @@
+package com.pacifique.microservices.composite.product;
+
+import com.pacifique.microservices.api.exceptions.ServiceUnavailableException;
+import com.pacifique.microservices.composite.product.services.ProductCompositeIntegration;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+/**
+ * The circuit breakers and bulkheads of the calls to the core services, with the real ProductCompositeIntegration
+ * calling a stub of the core services.
+ *
+ * A call rejected by an open circuit breaker, CallNotPermittedException, or a full bulkhead, BulkheadFullException,
+ * doesn't reach the core service. A rejected product call fails the request with 503, a rejected recommendation or
+ * review call gives a degraded aggregate.
+ */
+@SpringBootTest(
+        webEnvironment = RANDOM_PORT,
+        properties = {
+                "eureka.client.enabled=false",
+                "app.outbox.directory=build/outbox/resilience-tests",
+                "app.outbox.publisherConfirms=false",
+                "app.aggregate-cache.enabled=false",
+                "app.downstream.binary=false"}
+)
+@Import({TestChannelBinderConfiguration.class})
+class ResilienceTests {
+
+    private static final int PRODUCT_ID = 1;
+    private static final int FAILING_PRODUCT_ID = 2;
+
+    private static final Map<String, AtomicInteger> CALLS = new ConcurrentHashMap<>();
+    private static final HttpServer CORE_SERVICES = startCoreServices();
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private ProductCompositeIntegration integration;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    private BulkheadRegistry bulkheadRegistry;
+
+    @DynamicPropertySource
+    static void coreServices(DynamicPropertyRegistry registry) {
+        String uri = "http://localhost:" + CORE_SERVICES.getAddress().getPort();
+        // Resolved by the load balanced WebClient without Eureka
+        for (String service : new String[]{"product", "recommendation", "review"}) {
+            registry.add("spring.cloud.discovery.client.simple.instances." + service + "[0].uri", () -> uri);
+        }
+    }
+
+    @AfterAll
+    static void stopCoreServices() {
+        CORE_SERVICES.stop(0);
+    }
+
+    @BeforeEach
+    void setUp() {
+        CALLS.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(CircuitBreaker::reset);
+    }
+
+    @Test
+    void openReviewCircuitBreakerDegradesAggregate() {
+        circuitBreakerRegistry.circuitBreaker("review").transitionToOpenState();
+
+        StepVerifier.create(integration.getReviews(PRODUCT_ID))
+                .expectError(CallNotPermittedException.class)
+                .verify();
+
+        client.get().uri("/product-composite/" + PRODUCT_ID)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.productId").isEqualTo(PRODUCT_ID)
+                .jsonPath("$.recommendations.length()").isEqualTo(1)
+                .jsonPath("$.reviews.length()").isEqualTo(0)
+                .jsonPath("$.serviceAddresses.degraded.length()").isEqualTo(1)
+                .jsonPath("$.serviceAddresses.degraded[0]").isEqualTo("review");
+
+        assertEquals(0, calls("/review"));
+
+        client.get().uri("/actuator/circuitbreakers")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.circuitBreakers.review.state").isEqualTo("OPEN")
+                .jsonPath("$.circuitBreakers.product.state").isEqualTo("CLOSED");
+    }
+
+    @Test
+    void openProductCircuitBreakerGives503() {
+        circuitBreakerRegistry.circuitBreaker("product").transitionToOpenState();
+
+        StepVerifier.create(integration.getProduct(PRODUCT_ID))
+                .expectErrorSatisfies(ex -> {
+                    assertInstanceOf(ServiceUnavailableException.class, ex);
+                    assertInstanceOf(CallNotPermittedException.class, ex.getCause());
+                })
+                .verify();
+
+        client.get().uri("/product-composite/" + PRODUCT_ID)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(SERVICE_UNAVAILABLE)
+                .expectBody()
+                .jsonPath("$.path").isEqualTo("/product-composite/" + PRODUCT_ID);
+
+        assertEquals(0, calls("/product/"));
+
+        client.get().uri("/actuator/circuitbreakers")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.circuitBreakers.product.state").isEqualTo("OPEN");
+    }
+
+    @Test
+    void failingCallsOpenCircuitBreaker() {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("recommendation");
+        int slidingWindowSize = circuitBreaker.getCircuitBreakerConfig().getSlidingWindowSize();
+
+        // The stub fails all recommendation calls for this product
+        for (int i = 0; i < slidingWindowSize; i++) {
+            client.get().uri("/product-composite/" + FAILING_PRODUCT_ID)
+                    .accept(APPLICATION_JSON)
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody()
+                    .jsonPath("$.serviceAddresses.degraded[0]").isEqualTo("recommendation");
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        int callsWhenOpened = calls("/recommendation");
+        client.get().uri("/product-composite/" + PRODUCT_ID)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.serviceAddresses.degraded[0]").isEqualTo("recommendation");
+        assertEquals(callsWhenOpened, calls("/recommendation"));
+
+        client.get().uri("/actuator/circuitbreakers")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.circuitBreakers.recommendation.state").isEqualTo("OPEN");
+    }
+
+    @Test
+    void fullProductBulkheadGives503() {
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead("product");
+        int permits = saturate(bulkhead);
+        try {
+            StepVerifier.create(integration.getProduct(PRODUCT_ID))
+                    .expectErrorSatisfies(ex -> {
+                        assertInstanceOf(ServiceUnavailableException.class, ex);
+                        assertInstanceOf(BulkheadFullException.class, ex.getCause());
+                    })
+                    .verify();
+
+            client.get().uri("/product-composite/" + PRODUCT_ID)
+                    .accept(APPLICATION_JSON)
+                    .exchange()
+                    .expectStatus().isEqualTo(SERVICE_UNAVAILABLE);
+
+            assertEquals(0, calls("/product/"));
+        } finally {
+            release(bulkhead, permits);
+        }
+
+        client.get().uri("/product-composite/" + PRODUCT_ID)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void fullReviewBulkheadDegradesAggregate() {
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead("review");
+        int permits = saturate(bulkhead);
+        try {
+            StepVerifier.create(integration.getReviews(PRODUCT_ID))
+                    .expectError(BulkheadFullException.class)
+                    .verify();
+
+            client.get().uri("/product-composite/" + PRODUCT_ID)
+                    .accept(APPLICATION_JSON)
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody()
+                    .jsonPath("$.serviceAddresses.degraded.length()").isEqualTo(1)
+                    .jsonPath("$.serviceAddresses.degraded[0]").isEqualTo("review");
+
+            assertEquals(0, calls("/review"));
+        } finally {
+            release(bulkhead, permits);
+        }
+    }
+
+    /**
+     * Takes all permits of the bulkhead, as the calls in flight would.
+     */
+    private static int saturate(Bulkhead bulkhead) {
+        int permits = 0;
+        while (bulkhead.tryAcquirePermission()) {
+            permits++;
+        }
+        assertEquals(bulkhead.getBulkheadConfig().getMaxConcurrentCalls(), permits);
+        assertEquals(0, bulkhead.getMetrics().getAvailableConcurrentCalls());
+        return permits;
+    }
+
+    private static void release(Bulkhead bulkhead, int permits) {
+        for (int i = 0; i < permits; i++) {
+            bulkhead.onComplete();
+        }
+    }
+
+    private static int calls(String path) {
+        AtomicInteger calls = CALLS.get(path);
+        return calls == null ? 0 : calls.get();
+    }
+
+    /**
+     * The GET endpoints the composite calls for a composite product, answering with JSON. The recommendation service
+     * fails with 500 for FAILING_PRODUCT_ID.
+     */
+    private static HttpServer startCoreServices() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/product/", exchange -> {
+                int productId = Integer.parseInt(exchange.getRequestURI().getPath().substring("/product/".length()));
+                respond(exchange, "/product/", 200,
+                        "{\"productId\":" + productId + ",\"name\":\"name\",\"weight\":1,\"serviceAddress\":\"stub\"}");
+            });
+            server.createContext("/recommendation", exchange -> {
+                if (exchange.getRequestURI().getQuery().equals("productId=" + FAILING_PRODUCT_ID)) {
+                    respond(exchange, "/recommendation", 500, "{\"message\":\"failed\"}");
+                } else {
+                    respond(exchange, "/recommendation", 200,
+                            "[{\"productId\":" + PRODUCT_ID + ",\"recommendationId\":1,\"author\":\"a\",\"rate\":1,\"content\":\"c\"}]");
+                }
+            });
+            server.createContext("/review", exchange -> respond(exchange, "/review", 200, "[]"));
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String path, int status, String body) throws IOException {
+        CALLS.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", APPLICATION_JSON.toString());
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.pacifique.microservices.composite.product;
+
+import com.pacifique.microservices.composite.product.services.SingleFlight;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SingleFlightTests {
+
+    @Test
+    void concurrentRequestsShareOneUpstreamRequest() {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        Sinks.One<String> upstream = Sinks.one();
+
+        Mono<String> first = singleFlight.execute(1, () -> {
+            upstreamCalls.incrementAndGet();
+            return upstream.asMono();
+        });
+        Mono<String> second = singleFlight.execute(1, () -> {
+            upstreamCalls.incrementAndGet();
+            return upstream.asMono();
+        });
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> upstream.tryEmitValue("value"))
+                .expectNextMatches(t -> t.getT1().equals("value") && t.getT2().equals("value"))
+                .verifyComplete();
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void completedRequestIsNotReused() {
+        SingleFlight<Integer, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        StepVerifier.create(singleFlight.execute(1, () -> Mono.fromCallable(upstreamCalls::incrementAndGet)))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(singleFlight.execute(1, () -> Mono.fromCallable(upstreamCalls::incrementAndGet)))
+                .expectNext(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void forgottenRequestIsNotShared() {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        Sinks.One<String> stale = Sinks.one();
+        Sinks.One<String> fresh = Sinks.one();
+
+        Mono<String> first = singleFlight.execute(1, () -> {
+            upstreamCalls.incrementAndGet();
+            return stale.asMono();
+        });
+        StepVerifier.create(first)
+                .then(() -> {
+                    singleFlight.forget(1);
+                    // A caller arriving after forget starts a new request
+                    singleFlight.execute(1, () -> {
+                        upstreamCalls.incrementAndGet();
+                        return fresh.asMono();
+                    }).subscribe();
+                    stale.tryEmitValue("stale");
+                })
+                .expectNext("stale")
+                .verifyComplete();
+
+        assertEquals(2, upstreamCalls.get());
+        // The completed forgotten request has not released the new one
+        assertEquals(1, singleFlight.inFlightCount());
+        fresh.tryEmitValue("fresh");
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+}
@@ -4,11 +4,21 @@ import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
 import java.util.Optional;
 
 @Repository
 public interface ProductRepository extends ReactiveCrudRepository<ProductEntity, String> {
     Mono<ProductEntity> findByProductId(int productId);
+    Flux<ProductEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    /**
+     * Deletes the product on the server side, with one delete command and without reading the product.
+     *
+     * @return the number of deleted products
+     */
+    Mono<Long> deleteByProductId(int productId);
 }
@@ -5,17 +5,21 @@ import com.pacifique.microservices.core.product.persistance.ProductRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
 import org.springframework.web.bind.annotation.RestController;
 import com.pacifique.microservices.api.core.product.Product;
 import com.pacifique.microservices.api.core.product.ProductService;
 import com.pacifique.microservices.api.exceptions.InvalidInputException;
 import com.pacifique.microservices.api.exceptions.NotFoundException;
 import com.pacifique.microservices.util.http.ServiceUtil;
+import com.pacifique.microservices.util.tracing.RequestTracer;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import static java.util.logging.Level.FINE;
-
+import java.util.List;
+import java.util.stream.Collectors;
 
 @RestController
 public class ProductServiceImpl implements ProductService {
@@ -24,12 +28,18 @@ public class ProductServiceImpl implements ProductService {
     private final ServiceUtil serviceUtil;
     private final ProductRepository repository;
     private final ProductMapper mapper;
+    private final ReactiveMongoOperations mongoTemplate;
+    private final RequestTracer tracer;
+    private final int maxBatchSize;
 
     @Autowired
-    public ProductServiceImpl(ServiceUtil serviceUtil, ProductRepository repository, ProductMapper mapper) {
+    public ProductServiceImpl(ServiceUtil serviceUtil, ProductRepository repository, ProductMapper mapper, ReactiveMongoOperations mongoTemplate, RequestTracer tracer, @Value("${app.maxBatchSize:200}") Integer maxBatchSize) {
         this.serviceUtil = serviceUtil;
         this.repository = repository;
         this.mapper = mapper;
+        this.mongoTemplate = mongoTemplate;
+        this.tracer = tracer;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
@@ -39,37 +49,66 @@ public class ProductServiceImpl implements ProductService {
         }
         ProductEntity entity = mapper.apiToEntity(body);
 
-        return repository.save(entity)
-                .log(LOG.getName(), FINE)
+        return tracer.trace("createProduct", body.getProductId(), repository.save(entity))
                         .onErrorMap(DuplicateKeyException.class,
                                 ex -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId()))
                                 .map(mapper::entityToApi);
 
     }
 
+    /**
+     * Inserts the products with one ordered bulk write, used by the message processor for batches of create events.
+     * If the bulk write fails, the products before the failing one are stored and the remaining ones are not.
+     *
+     * @return the number of stored products
+     */
+    public Mono<Integer> createProducts(List<Product> bodies) {
+        List<ProductEntity> entities = bodies.stream().map(mapper::apiToEntity).collect(Collectors.toList());
+        LOG.debug("createProducts: tries to insert {} product entities", entities.size());
+
+        return tracer.trace("createProducts", entities.size(), mongoTemplate.insertAll(entities)
+                .count()
+                .map(Long::intValue));
+    }
+
     @Override
     public Mono<Product> getProduct(int productId) {
 
         if (productId < 1) {
             throw new InvalidInputException("Invalid productId: " + productId);
         }
-        LOG.info("Will get product info for id={}", productId);
-
-        return repository.findByProductId(productId)
-                .switchIfEmpty(Mono.error(new NotFoundException("No product found for productId: "+productId)))
-                .log(LOG.getName(),FINE)
+        return tracer.trace("getProduct", productId, repository.findByProductId(productId)
+                .switchIfEmpty(Mono.error(new NotFoundException("No product found for productId: "+productId))))
                 .map(mapper::entityToApi)
                 .map(this::setServiceAddress);
 
     }
 
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+
+        ServiceUtil.checkBatchSize(productIds, maxBatchSize);
+        productIds.forEach(productId -> {
+            if (productId < 1) {
+                throw new InvalidInputException("Invalid productId: " + productId);
+            }
+        });
+        LOG.debug("Will get product info for {} ids", productIds.size());
+
+        return tracer.trace("getProducts", productIds.size(), repository.findByProductIdIn(productIds))
+                .map(mapper::entityToApi)
+                .map(this::setServiceAddress);
+    }
+
     @Override
     public Mono<Void> deleteProduct(int productId) {
         if (productId < 1) {
             throw new InvalidInputException("Invalid productId: " + productId);
         }
         LOG.debug(" deleteProduct: tries to delete an entity with productId: {}", productId);
-        return repository.findByProductId(productId).log(LOG.getName(),FINE).map(repository::delete).flatMap(e->e);
+        return tracer.trace("deleteProduct", productId, repository.deleteByProductId(productId))
+                .doOnNext(count -> LOG.debug("deleteProduct: deleted {} entities with productId: {}", count, productId))
+                .then();
 
     }
 
@@ -70,6 +70,13 @@ public class PersistenceTests extends MongoDbTestBase {
         StepVerifier.create(repository.existsById(savedEntity.getId())).expectNext(false).verifyComplete();
     }
 
+    @Test
+    void deleteByProductId() {
+        StepVerifier.create(repository.deleteByProductId(savedEntity.getProductId())).expectNext(1L).verifyComplete();
+        StepVerifier.create(repository.existsById(savedEntity.getId())).expectNext(false).verifyComplete();
+        StepVerifier.create(repository.deleteByProductId(savedEntity.getProductId())).expectNext(0L).verifyComplete();
+    }
+
     @Test
     void getByProductId() {
         StepVerifier.create(repository.findByProductId(savedEntity.getProductId()))
@@ -3,16 +3,39 @@ package com.pacifique.microservices.core.product;
 import com.pacifique.microservices.api.core.product.Product;
 import com.pacifique.microservices.api.event‎.Event;
 import com.pacifique.microservices.api.exceptions.InvalidInputException;
+import com.pacifique.microservices.core.product.persistance.ProductEntity;
 import com.pacifique.microservices.core.product.persistance.ProductRepository;
+import com.pacifique.microservices.util.messaging.EventBinaryCodec;
+import com.pacifique.microservices.util.messaging.EventMetrics;
+import com.pacifique.microservices.util.messaging.ProcessedEvents;
+import com.pacifique.microservices.util.tracing.RequestTracer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.cloud.stream.binder.test.InputDestination;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.function.Consumer;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.pacifique.microservices.api.event‎.Event.Type.CREATE;
 import static com.pacifique.microservices.api.event‎.Event.Type.DELETE;
@@ -20,7 +43,6 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
-import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
@@ -28,6 +50,8 @@ import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Mono.just;
 
 @SpringBootTest(webEnvironment = RANDOM_PORT,properties = "eureka.client.enabled=false")
+@ExtendWith(OutputCaptureExtension.class)
+@Import({TestChannelBinderConfiguration.class})
 class ProductServiceApplicationTests extends MongoDbTestBase {
     @Autowired
     private WebTestClient client;
@@ -35,13 +59,26 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
     @Autowired
     private ProductRepository repository;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RequestTracer tracer;
+
+    @Autowired
+    private InputDestination input;
+
+    @Autowired
+    private OutputDestination target;
+
     @Autowired
     @Qualifier("messageProcessor")
-    private Consumer<Event<Integer,Product>> messageProcessor;
+    private Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> messageProcessor;
 
     @BeforeEach
     void setupDb() {
         repository.deleteAll().block();
+        target.clear();
     }
 
     @Test
@@ -59,6 +96,57 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
         getAndVerifyProduct(productId, OK).jsonPath("$.productId").isEqualTo(productId);
     }
 
+    @Test
+    void getProductsByIds() {
+
+        sendCreateProductEvent(1);
+        sendCreateProductEvent(2);
+        sendCreateProductEvent(3);
+
+        getAndVerifyProduct("?productIds=1,3,13", OK)
+                .jsonPath("$.length()").isEqualTo(2);
+    }
+
+    @Test
+    void getProductsTooManyIds() {
+
+        getAndVerifyProduct("?productIds=" + IntStream.rangeClosed(1, 201).mapToObj(Integer::toString).collect(Collectors.joining(",")), UNPROCESSABLE_ENTITY)
+                .jsonPath("$.message").isEqualTo("Too many product ids: 201, max is: 200");
+    }
+
+    @Test
+    void getProductsAsSmile() {
+        MediaType smile = MediaType.valueOf("application/x-jackson-smile");
+        MediaType smileStream = MediaType.valueOf("application/stream+x-jackson-smile");
+
+        sendCreateProductEvent(1);
+        sendCreateProductEvent(2);
+
+        Product product = client.get().uri("/product/1")
+                .accept(smile, APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(smile)
+                .expectBody(Product.class)
+                .returnResult().getResponseBody();
+        assertEquals(1, product.getProductId());
+
+        List<Product> products = client.get().uri("/product?productIds=1,2")
+                .accept(smileStream, APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(smileStream)
+                .expectBodyList(Product.class)
+                .returnResult().getResponseBody();
+        assertEquals(2, products.size());
+
+        // Clients that don't ask for Smile still get JSON
+        client.get().uri("/product/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(APPLICATION_JSON);
+    }
+
     @Test
     void duplicateError() {
 
@@ -70,10 +158,83 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
         assertNotNull(repository.findByProductId(productId).block());
 
 
-        InvalidInputException thrown = assertThrows(InvalidInputException.class, () -> sendCreateProductEvent(productId),
-                "Expected a InvalidInputException here!");
+        // The duplicate is dead lettered instead of failing the stream of events
+        sendCreateProductEvent(productId);
 
-        assertEquals("Duplicate key, Product Id: "+productId, thrown.getMessage());
+        assertEquals(1, repository.count().block());
+        Message<byte[]> deadLetter = target.receive(0, "DLX");
+        assertNotNull(deadLetter);
+        assertEquals(InvalidInputException.class.getName(), deadLetter.getHeaders().get(ProcessedEvents.EXCEPTION_TYPE_HEADER));
+        assertNull(target.receive(0, "DLX"));
+    }
+
+    @Test
+    void publishAcceptedEvents() {
+
+        messageProcessor.apply(messages(
+                createProductEvent(1),
+                createProductEvent(1),
+                new Event(null, 1, DELETE))).block();
+
+        // The stored events are published for the composite, the dead lettered duplicate is not
+        Message<byte[]> created = target.receive(0, "products.accepted");
+        assertNotNull(created);
+        assertTrue(new String(created.getPayload()).contains("\"eventType\":\"CREATE\""));
+        Message<byte[]> deleted = target.receive(0, "products.accepted");
+        assertNotNull(deleted);
+        assertTrue(new String(deleted.getPayload()).contains("\"eventType\":\"DELETE\""));
+        assertNull(target.receive(0, "products.accepted"));
+        assertNotNull(target.receive(0, "DLX"));
+    }
+
+    @Test
+    void processBinaryEvents() {
+
+        // As sent by a composite with app.outbox.binaryEvents = true
+        Event<Integer, Product> event = createProductEvent(1);
+        input.send(MessageBuilder.withPayload(EventBinaryCodec.encode(event))
+                .setHeader(MessageHeaders.CONTENT_TYPE, EventBinaryCodec.MIME_TYPE_VALUE)
+                .build(), "products");
+
+        Message<byte[]> accepted = target.receive(10000, "products.accepted");
+        assertNotNull(accepted);
+        ProductEntity stored = repository.findByProductId(1).block();
+        assertNotNull(stored);
+        assertEquals("Name 1", stored.getName());
+        assertNull(target.receive(0, "DLX"));
+    }
+
+    @Test
+    void processBatchOfEvents() {
+
+        messageProcessor.apply(messages(
+                createProductEvent(1),
+                createProductEvent(2),
+                createProductEvent(1),
+                createProductEvent(3),
+                new Event(null, 2, DELETE))).block();
+
+        // The duplicate is dead lettered and the other products of the batch are stored
+        assertEquals(2, repository.count().block());
+        assertNotNull(repository.findByProductId(1).block());
+        assertNull(repository.findByProductId(2).block());
+        assertNotNull(repository.findByProductId(3).block());
+    }
+
+    @Test
+    void eventMetrics() {
+        long processed = processedCount("CREATE", "PROCESSED");
+        long deadLettered = processedCount("CREATE", "DEAD_LETTERED");
+        long consumed = consumedCount("CREATE");
+
+        messageProcessor.apply(messages(
+                createProductEvent(1),
+                createProductEvent(2),
+                createProductEvent(1))).block();
+
+        assertEquals(consumed + 3, consumedCount("CREATE"));
+        assertEquals(processed + 2, processedCount("CREATE", "PROCESSED"));
+        assertEquals(deadLettered + 1, processedCount("CREATE", "DEAD_LETTERED"));
     }
 
     @Test
@@ -119,6 +280,34 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
                 .jsonPath("$.message").isEqualTo("Invalid productId: " + productIdInvalid);
     }
 
+    @Test
+    void switchTracingAtRuntime(CapturedOutput output) {
+
+        sendCreateProductEvent(1);
+
+        configureTracing("{\"enabled\": true, \"sampleRate\": 1.0}", OK)
+                .jsonPath("$.enabled").isEqualTo(true)
+                .jsonPath("$.sampleRate").isEqualTo(1.0);
+        try {
+            // Traced requests are answered as before
+            getAndVerifyProduct(1, OK).jsonPath("$.productId").isEqualTo(1);
+            getAndVerifyProduct(13, NOT_FOUND);
+            assertTrue(output.getOut().contains("operation=getProduct key=1 outcome=SUCCESS elements=1"), "No request-trace line was logged");
+
+            configureTracing("{\"sampleRate\": 2}", BAD_REQUEST);
+            client.get().uri("/actuator/tracing").exchange()
+                    .expectStatus().isOk()
+                    .expectBody().jsonPath("$.sampleRate").isEqualTo(1.0);
+        } finally {
+            configureTracing("{\"enabled\": false}", OK);
+        }
+        assertFalse(tracer.isEnabled());
+
+        int logged = output.getOut().length();
+        getAndVerifyProduct(1, OK);
+        assertFalse(output.getOut().substring(logged).contains("operation=getProduct"), "A request-trace line was logged with tracing disabled");
+    }
+
     private WebTestClient.BodyContentSpec getAndVerifyProduct(int productId, HttpStatus expectedStatus) {
         return getAndVerifyProduct("/" + productId, expectedStatus);
     }
@@ -134,14 +323,42 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
     }
 
 
+    private WebTestClient.BodyContentSpec configureTracing(String settings, HttpStatus expectedStatus) {
+        return client.post()
+                .uri("/actuator/tracing")
+                .contentType(APPLICATION_JSON)
+                .bodyValue(settings)
+                .exchange()
+                .expectStatus().isEqualTo(expectedStatus)
+                .expectBody();
+    }
+
     private void sendCreateProductEvent(int productId) {
+        messageProcessor.apply(messages(createProductEvent(productId))).block();
+    }
+
+    private Event<Integer,Product> createProductEvent(int productId) {
         Product product = new Product(productId, "Name " + productId, productId, "SA");
-        Event<Integer,Product> event = new Event(product, product, CREATE);
-        messageProcessor.accept(event);
+        return new Event(product, productId, CREATE);
     }
 
     private void sendDeleteProductEvent(int productId) {
         Event<Integer,Product> event = new Event(null, productId, DELETE);
-        messageProcessor.accept(event);
+        messageProcessor.apply(messages(event)).block();
+    }
+
+    private long consumedCount(String eventType) {
+        Timer timer = meterRegistry.find(EventMetrics.CONSUME_LAG).tags("eventType", eventType).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private long processedCount(String eventType, String outcome) {
+        Timer timer = meterRegistry.find(EventMetrics.PROCESSING).tags("eventType", eventType, "outcome", outcome).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    @SafeVarargs
+    private static Flux<Message<Event<Integer, Product>>> messages(Event<Integer, Product>... events) {
+        return Flux.just(events).map(event -> MessageBuilder.withPayload(event).build());
     }
 }
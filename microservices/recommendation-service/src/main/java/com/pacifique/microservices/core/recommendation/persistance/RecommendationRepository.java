@@ -1,10 +1,27 @@
 package com.pacifique.microservices.core.recommendation.persistance;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
 
 @Repository
 public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity,String> {
     Flux<RecommendationEntity> findByProductId(int productId);
+    Flux<RecommendationEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    /**
+     * Gets the next page of the recommendations of a product, using the unique prod-rec-id index.
+     */
+    Flux<RecommendationEntity> findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(int productId, int recommendationId, Limit limit);
+
+    /**
+     * Deletes the recommendations of the product on the server side, with one delete command and without reading them.
+     *
+     * @return the number of deleted recommendations
+     */
+    Mono<Long> deleteByProductId(int productId);
 }
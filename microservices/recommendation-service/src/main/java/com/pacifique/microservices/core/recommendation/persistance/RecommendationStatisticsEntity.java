@@ -0,0 +1,30 @@
+package com.pacifique.microservices.core.recommendation.persistance;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Map;
+
+/**
+ * Summary of the recommendations of a product, kept up to date when recommendations are created and deleted.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Document(collection = "recommendationStatistics")
+public class RecommendationStatisticsEntity {
+
+    @Id
+    private int productId;
+
+    private long count;
+    private long ratingSum;
+
+    /** Number of recommendations per rating, keyed by the rating as a string */
+    private Map<String, Long> histogram;
+}
@@ -1,52 +1,184 @@
 package com.pacifique.microservices.core.recommendation.services;
 
+import com.mongodb.MongoBulkWriteException;
 import com.pacifique.microservices.api.core.recommendation.Recommendation;
-import com.pacifique.microservices.api.core.recommendation.RecommendationService;
 import com.pacifique.microservices.api.event‎.Event;
 import com.pacifique.microservices.api.exceptions.EventProcessingException;
+import com.pacifique.microservices.api.exceptions.InvalidInputException;
+import com.pacifique.microservices.util.messaging.EventMetrics;
+import com.pacifique.microservices.util.messaging.ProcessedEvents;
+import com.pacifique.microservices.util.reactor.BlockingSchedulers;
+import com.pacifique.microservices.util.tracing.RequestTracer;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
-import java.util.function.Consumer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * Processes the recommendation events without blocking the binder threads.
+ *
+ * Events are spread over a fixed number of lanes by key, i.e. productId. Each lane processes its
+ * events in the order they were received, while the lanes run concurrently.
+ *
+ * The events of a lane are collected in batches of up to batchSize events. Consecutive create events
+ * in a batch are stored with one bulk write, all other events are processed one by one.
+ * A reactive function is not covered by the binder's retry and DLQ support, so failed events are
+ * retried here and then published to the dead-letter destination of the consumer group. A message is
+ * acked once its event is stored or dead lettered, see ProcessedEvents for what is redelivered or lost.
+ */
 @Configuration
 public class MessageProcessorConfig {
     private static final Logger LOG = LoggerFactory.getLogger(MessageProcessorConfig.class);
-
-    private final RecommendationService recommendationService;
+    private final RecommendationServiceImpl recommendationService;
+    private final EventMetrics eventMetrics;
+    private final ProcessedEvents processedEvents;
+    private final RequestTracer tracer;
+    private final int concurrency;
+    private final int batchSize;
+    private final Duration batchTimeout;
+    private final int maxAttempts;
+    private final Duration backOffInitialInterval;
+    private final Duration backOffMaxInterval;
 
     @Autowired
-    public MessageProcessorConfig(RecommendationService recommendationService) {
+    public MessageProcessorConfig(
+            RecommendationServiceImpl recommendationService,
+            StreamBridge streamBridge,
+            MeterRegistry meterRegistry,
+            RequestTracer tracer,
+            BlockingSchedulers blockingSchedulers,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.destination}") String destination,
+            @Value("${app.messageProcessor.concurrency:16}") Integer concurrency,
+            @Value("${app.messageProcessor.batchSize:100}") Integer batchSize,
+            @Value("${app.messageProcessor.batchTimeoutMs:50}") Integer batchTimeoutMs,
+            @Value("${app.messageProcessor.maxAttempts:3}") Integer maxAttempts,
+            @Value("${app.messageProcessor.backOffInitialInterval:500}") Integer backOffInitialInterval,
+            @Value("${app.messageProcessor.backOffMaxInterval:1000}") Integer backOffMaxInterval,
+            @Value("${app.messageProcessor.publishThreadPoolSize:4}") Integer publishThreadPoolSize) {
         this.recommendationService = recommendationService;
+        this.eventMetrics = new EventMetrics(meterRegistry, destination);
+        // A lane waits for its publish, so at most one publish per lane is queued
+        this.processedEvents = new ProcessedEvents(streamBridge,
+                blockingSchedulers.newScheduler("publish-pool", publishThreadPoolSize, concurrency), eventMetrics);
+        this.tracer = tracer;
+        this.concurrency = concurrency;
+        this.batchSize = batchSize;
+        this.batchTimeout = Duration.ofMillis(batchTimeoutMs);
+        this.maxAttempts = maxAttempts;
+        this.backOffInitialInterval = Duration.ofMillis(backOffInitialInterval);
+        this.backOffMaxInterval = Duration.ofMillis(backOffMaxInterval);
     }
 
     @Bean
-    public Consumer<Event<Integer, Recommendation>> messageProcessor() {
-        return event -> {
-            LOG.info("Process message created at: {}", event.getEventCreatedAt());
-            switch (event.getEventType()) {
-                case CREATE:
-                    Recommendation recommendation = event.getData();
-                    LOG.info("Created recommendation With ID: {}/{}", recommendation.getProductId(), recommendation.getRecommendationId());
-                    recommendationService.createRecommendation(recommendation).block();
-                    break;
-                case DELETE:
-                    Integer productId = event.getKey();
-                    LOG.info("Deleted recommendation with ID: {}", productId);
-                    recommendationService.deleteRecommendations(productId).block();
-                    break;
-                default:
-                    String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
-                    LOG.warn(errorMessage);
-                    throw new EventProcessingException(errorMessage);
+    public Function<Flux<Message<Event<Integer, Recommendation>>>, Mono<Void>> messageProcessor() {
+        return messages -> messages
+                .doOnNext(eventMetrics::recordConsumed)
+                .groupBy(message -> Math.floorMod(Objects.hashCode(message.getPayload().getKey()), concurrency))
+                .flatMap(lane -> lane
+                        .bufferTimeout(batchSize, batchTimeout, true)
+                        .concatMap(this::processBatch), concurrency)
+                .then();
+    }
 
+    private Mono<Void> processBatch(List<Message<Event<Integer, Recommendation>>> batch) {
+        List<Mono<Void>> steps = new ArrayList<>();
+        List<Message<Event<Integer, Recommendation>>> creates = new ArrayList<>();
+        for (Message<Event<Integer, Recommendation>> message : batch) {
+            if (isValidCreate(message.getPayload())) {
+                creates.add(message);
+            } else {
+                if (!creates.isEmpty()) {
+                    steps.add(createInBulk(creates));
+                    creates = new ArrayList<>();
+                }
+                steps.add(processEvent(message));
             }
-            LOG.info("Message processing done!");
+        }
+        if (!creates.isEmpty()) {
+            steps.add(createInBulk(creates));
+        }
+        return Flux.concat(steps).then();
+    }
 
-        };
+    /**
+     * Stores the recommendations of the create events with one bulk write. The bulk write is ordered, so when it
+     * fails on a recommendation, the recommendations before it are already stored. The failing event is then processed on
+     * its own, to be retried or dead lettered, and the remaining events are written with a new bulk write.
+     */
+    private Mono<Void> createInBulk(List<Message<Event<Integer, Recommendation>>> messages) {
+        if (messages.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> recommendationService.createRecommendations(messages.stream().map(message -> message.getPayload().getData()).collect(Collectors.toList())))
+                .doOnNext(count -> LOG.debug("Created {} recommendations with one bulk write", count))
+                .then(Mono.defer(() -> processedEvents.stored(messages)))
+                .onErrorResume(ex -> {
+                    int failedIndex = failedIndex(ex);
+                    if (failedIndex < 0) {
+                        LOG.warn("Bulk write of {} recommendations failed, will process them one by one: {}", messages.size(), ex.toString());
+                        return Flux.fromIterable(messages).concatMap(this::processEvent).then();
+                    }
+                    LOG.debug("Bulk write of {} recommendations failed at recommendation {}", messages.size(), failedIndex);
+                    // The ones before the failing event are stored
+                    return processedEvents.stored(messages.subList(0, failedIndex))
+                            .then(processEvent(messages.get(failedIndex)))
+                            .then(createInBulk(messages.subList(failedIndex + 1, messages.size())));
+                });
+    }
+
+    private Mono<Void> processEvent(Message<Event<Integer, Recommendation>> message) {
+        Event<Integer, Recommendation> event = message.getPayload();
+        return tracer.trace("processEvent", event.getKey(), Mono.defer(() -> handleEvent(event)))
+                .retryWhen(Retry.backoff(maxAttempts - 1, backOffInitialInterval)
+                        .maxBackoff(backOffMaxInterval)
+                        .filter(ex -> !(ex instanceof InvalidInputException || ex instanceof EventProcessingException)))
+                .then(Mono.defer(() -> processedEvents.stored(message)))
+                .onErrorResume(ex -> {
+                    LOG.warn("Failed to process message created at {}, will dead letter it: {}", event.getEventCreatedAt(), ex.toString());
+                    return processedEvents.deadLetter(message, ex);
+                });
+    }
 
+    private Mono<Void> handleEvent(Event<Integer, Recommendation> event) {
+        switch (event.getEventType()) {
+            case CREATE:
+                Recommendation recommendation = event.getData();
+                return recommendationService.createRecommendation(recommendation).then();
+            case DELETE:
+                Integer productId = event.getKey();
+                return recommendationService.deleteRecommendations(productId);
+            default:
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
+                LOG.warn(errorMessage);
+                return Mono.error(new EventProcessingException(errorMessage));
+        }
+    }
+
+    private boolean isValidCreate(Event<Integer, Recommendation> event) {
+        return event.getEventType() == Event.Type.CREATE && event.getData() != null && event.getData().getProductId() >= 1;
+    }
+
+    private static int failedIndex(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoBulkWriteException && !((MongoBulkWriteException) cause).getWriteErrors().isEmpty()) {
+                return ((MongoBulkWriteException) cause).getWriteErrors().get(0).getIndex();
+            }
+        }
+        return -1;
     }
 }
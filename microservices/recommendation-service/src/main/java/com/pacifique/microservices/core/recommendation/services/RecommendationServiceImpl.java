@@ -1,20 +1,29 @@
 package com.pacifique.microservices.core.recommendation.services;
 
 import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.recommendation.RecommendationPage;
 import com.pacifique.microservices.api.core.recommendation.RecommendationService;
+import com.pacifique.microservices.api.core.recommendation.RecommendationStatistics;
 import com.pacifique.microservices.api.exceptions.InvalidInputException;
 import com.pacifique.microservices.core.recommendation.persistance.RecommendationEntity;
 import com.pacifique.microservices.core.recommendation.persistance.RecommendationRepository;
 import com.pacifique.microservices.util.http.ServiceUtil;
+import com.pacifique.microservices.util.paging.KeysetCursor;
+import com.pacifique.microservices.util.tracing.RequestTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import static java.util.logging.Level.FINE;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @RestController
 public class RecommendationServiceImpl implements RecommendationService {
@@ -23,12 +32,30 @@ public class RecommendationServiceImpl implements RecommendationService {
     private final ServiceUtil serviceUtil;
     private final RecommendationRepository repository;
     private final RecommendationMapper mapper;
+    private final ReactiveMongoOperations mongoTemplate;
+    private final RecommendationStatisticsStore statistics;
+    private final RequestTracer tracer;
+    private final int maxPageSize;
+    private final int maxBatchSize;
 
     @Autowired
-    public RecommendationServiceImpl(ServiceUtil serviceUtil, RecommendationRepository repository, RecommendationMapper mapper) {
+    public RecommendationServiceImpl(
+            ServiceUtil serviceUtil,
+            RecommendationRepository repository,
+            RecommendationMapper mapper,
+            ReactiveMongoOperations mongoTemplate,
+            RecommendationStatisticsStore statistics,
+            RequestTracer tracer,
+            @Value("${app.maxPageSize:1000}") Integer maxPageSize,
+            @Value("${app.maxBatchSize:200}") Integer maxBatchSize) {
         this.serviceUtil = serviceUtil;
         this.repository = repository;
         this.mapper = mapper;
+        this.mongoTemplate = mongoTemplate;
+        this.statistics = statistics;
+        this.tracer = tracer;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
@@ -39,23 +66,82 @@ public class RecommendationServiceImpl implements RecommendationService {
 
         RecommendationEntity entity = mapper.apiToEntity(body);
 
-        return repository.save(entity)
-                .log(LOG.getName(), FINE)
+        return tracer.trace("createRecommendation", body.getProductId(), repository.save(entity))
                 .onErrorMap(DuplicateKeyException.class,
                         ex -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId() + ", Recommendation Id: " +
                                 body.getRecommendationId()))
+                .flatMap(saved -> statistics.add(List.of(saved))
+                        // The recommendation is stored, a retried event would be a duplicate, so the statistics of
+                        // its product are computed again
+                        .onErrorResume(ex -> statistics.recompute(List.of(saved.getProductId())).then(Mono.error(ex)))
+                        .thenReturn(saved))
                 .map(mapper::entityToApi);
     }
 
+    /**
+     * Inserts the recommendations with one ordered bulk write, used by the message processor for batches of create events.
+     * If the bulk write fails, the recommendations before the failing one are stored and the remaining ones are not.
+     *
+     * @return the number of stored recommendations
+     */
+    public Mono<Integer> createRecommendations(List<Recommendation> bodies) {
+        List<RecommendationEntity> entities = bodies.stream().map(mapper::apiToEntity).collect(Collectors.toList());
+        LOG.debug("createRecommendations: tries to insert {} recommendation entities", entities.size());
+
+        return tracer.trace("createRecommendations", entities.size(), mongoTemplate.insertAll(entities)
+                .collectList()
+                .flatMap(inserted -> statistics.add(inserted).thenReturn(inserted.size()))
+                // Some of the recommendations may be stored, the statistics of their products are computed again
+                .onErrorResume(ex -> statistics.recompute(entities.stream().map(RecommendationEntity::getProductId).collect(Collectors.toList()))
+                        .then(Mono.error(ex))));
+    }
+
     @Override
     public Flux<Recommendation> getRecommendations(int productId) {
         if (productId < 1) {
             throw new InvalidInputException("Invalid productId: " + productId);
         }
 
-        LOG.info("Will get recommendation for product with id: {}", productId);
-        return repository.findByProductId(productId)
-                .log(LOG.getName(), FINE)
+        return tracer.trace("getRecommendations", productId, repository.findByProductId(productId))
+                .map(mapper::entityToApi)
+                .map(this::setServiceAddress);
+    }
+
+    @Override
+    public Mono<RecommendationPage> getRecommendationPage(int productId, int limit, String cursor) {
+        if (productId < 1) {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        }
+        KeysetCursor.validateLimit(limit, maxPageSize);
+        int afterRecommendationId = KeysetCursor.decode(cursor, productId);
+
+        LOG.debug("Will get a page of {} recommendations for product with id: {} after recommendationId: {}", limit, productId, afterRecommendationId);
+        // One more recommendation than the page holds tells if there is a next page
+        return tracer.trace("getRecommendationPage", productId,
+                        repository.findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(productId, afterRecommendationId, Limit.of(limit + 1)))
+                .map(mapper::entityToApi)
+                .map(this::setServiceAddress)
+                .collectList()
+                .map(recommendations -> {
+                    if (recommendations.size() <= limit) {
+                        return new RecommendationPage(recommendations, null);
+                    }
+                    List<Recommendation> page = recommendations.subList(0, limit);
+                    return new RecommendationPage(page, KeysetCursor.encode(productId, page.get(limit - 1).getRecommendationId()));
+                });
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendationsForProducts(List<Integer> productIds) {
+        ServiceUtil.checkBatchSize(productIds, maxBatchSize);
+        productIds.forEach(productId -> {
+            if (productId < 1) {
+                throw new InvalidInputException("Invalid productId: " + productId);
+            }
+        });
+
+        LOG.debug("Will get recommendations for {} products", productIds.size());
+        return tracer.trace("getRecommendationsForProducts", productIds.size(), repository.findByProductIdIn(productIds))
                 .map(mapper::entityToApi)
                 .map(this::setServiceAddress);
     }
@@ -67,7 +153,34 @@ public class RecommendationServiceImpl implements RecommendationService {
         }
 
         LOG.debug("deleteRecommendations: tries to delete recommendation for product with productId: {}", productId);
-        return repository.deleteAll(repository.findByProductId(productId));
+        return tracer.trace("deleteRecommendations", productId, repository.deleteByProductId(productId))
+                .doOnNext(count -> LOG.debug("deleteRecommendations: deleted {} recommendations for product with productId: {}", count, productId))
+                .then(statistics.remove(productId));
+    }
+
+    @Override
+    public Mono<RecommendationStatistics> getRecommendationStatistics(int productId) {
+        if (productId < 1) {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        }
+
+        LOG.debug("Will get recommendation statistics for product with id: {}", productId);
+        return tracer.trace("getRecommendationStatistics", productId, statistics.get(List.of(productId))
+                .next()
+                .defaultIfEmpty(new RecommendationStatistics(productId, 0, 0, Map.of())));
+    }
+
+    @Override
+    public Flux<RecommendationStatistics> getRecommendationStatisticsForProducts(List<Integer> productIds) {
+        ServiceUtil.checkBatchSize(productIds, maxBatchSize);
+        productIds.forEach(productId -> {
+            if (productId < 1) {
+                throw new InvalidInputException("Invalid productId: " + productId);
+            }
+        });
+
+        LOG.debug("Will get recommendation statistics for {} products", productIds.size());
+        return tracer.trace("getRecommendationStatisticsForProducts", productIds.size(), statistics.get(productIds));
     }
 
     private Recommendation setServiceAddress(Recommendation e) {
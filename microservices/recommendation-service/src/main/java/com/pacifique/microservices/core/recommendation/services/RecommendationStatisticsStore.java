@@ -0,0 +1,170 @@
+package com.pacifique.microservices.core.recommendation.services;
+
+import com.pacifique.microservices.api.core.recommendation.RecommendationStatistics;
+import com.pacifique.microservices.core.recommendation.persistance.RecommendationEntity;
+import com.pacifique.microservices.core.recommendation.persistance.RecommendationStatisticsEntity;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Keeps a statistics document per product in the recommendationStatistics collection, with the number of
+ * recommendations, the sum of their ratings and the number of recommendations per rating.
+ *
+ * The documents are updated with $inc when recommendations are created, so reading the statistics of a product
+ * reads one document. A product without a statistics document, e.g. one whose recommendations were stored before the
+ * statistics were kept, gets its statistics computed by an aggregation over the recommendations collection, when
+ * they are read or when the $inc of a created recommendation inserts its document.
+ */
+@Component
+public class RecommendationStatisticsStore {
+    private static final Logger LOG = LoggerFactory.getLogger(RecommendationStatisticsStore.class);
+
+    private final ReactiveMongoOperations mongoTemplate;
+
+    @Autowired
+    public RecommendationStatisticsStore(ReactiveMongoOperations mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Adds the stored recommendations to the statistics of their products, with one upsert per product.
+     *
+     * An upsert that inserts a document starts counting from zero, but the product can have recommendations stored
+     * before the statistics were kept. The inserted documents are replaced with statistics computed from all
+     * recommendations of their products, which include the ones just stored.
+     */
+    public Mono<Void> add(List<RecommendationEntity> entities) {
+        if (entities.isEmpty()) {
+            return Mono.empty();
+        }
+        Map<Integer, List<RecommendationEntity>> perProduct = entities.stream()
+                .collect(Collectors.groupingBy(RecommendationEntity::getProductId, LinkedHashMap::new, Collectors.toList()));
+
+        ReactiveBulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RecommendationStatisticsEntity.class);
+        perProduct.forEach((productId, recommendations) -> {
+            Update update = new Update()
+                    .inc("count", recommendations.size())
+                    .inc("ratingSum", recommendations.stream().mapToLong(RecommendationEntity::getRating).sum());
+            recommendations.stream()
+                    .collect(Collectors.groupingBy(RecommendationEntity::getRating, Collectors.counting()))
+                    .forEach((rating, count) -> update.inc("histogram." + rating, count));
+            bulkOps.upsert(query(where("_id").is(productId)), update);
+        });
+        return bulkOps.execute()
+                .doOnNext(result -> LOG.debug("Updated the recommendation statistics of {} products", perProduct.size()))
+                .flatMap(result -> {
+                    List<Integer> inserted = result.getUpserts().stream()
+                            .map(upsert -> upsert.getId().asInt32().getValue())
+                            .collect(Collectors.toList());
+                    if (inserted.isEmpty()) {
+                        return Mono.empty();
+                    }
+                    LOG.debug("Computes the recommendation statistics of the {} products that got a new statistics document", inserted.size());
+                    return recompute(inserted);
+                })
+                .then();
+    }
+
+    public Mono<Void> remove(int productId) {
+        return mongoTemplate.remove(query(where("_id").is(productId)), RecommendationStatisticsEntity.class).then();
+    }
+
+    /**
+     * Replaces the statistics of the products with statistics computed from their recommendations, e.g. after a
+     * failed bulk write where it is not known which recommendations were stored.
+     */
+    public Mono<Void> recompute(Collection<Integer> productIds) {
+        return aggregate(productIds)
+                .collectMap(RecommendationStatisticsEntity::getProductId)
+                .flatMapMany(computed -> Flux.fromIterable(productIds).distinct()
+                        .concatMap(productId -> computed.containsKey(productId)
+                                ? mongoTemplate.save(computed.get(productId)).then()
+                                : remove(productId)))
+                .then();
+    }
+
+    public Flux<RecommendationStatistics> get(List<Integer> productIds) {
+        return mongoTemplate.find(query(where("_id").in(productIds)), RecommendationStatisticsEntity.class)
+                .collectMap(RecommendationStatisticsEntity::getProductId)
+                .flatMapMany(stored -> {
+                    List<Integer> missing = productIds.stream().distinct().filter(id -> !stored.containsKey(id)).collect(Collectors.toList());
+                    Flux<RecommendationStatisticsEntity> backfilled = missing.isEmpty() ? Flux.empty() : aggregate(missing).concatMap(this::backfill);
+                    return Flux.concat(Flux.fromIterable(stored.values()), backfilled);
+                })
+                .map(this::toApi);
+    }
+
+    /**
+     * Computes the statistics of the products on the server side, grouping their recommendations by product and rating.
+     * Products without recommendations are left out.
+     */
+    Flux<RecommendationStatisticsEntity> aggregate(Collection<Integer> productIds) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                match(where("productId").in(productIds)),
+                group("productId", "rating").count().as("count"));
+
+        return mongoTemplate.aggregate(aggregation, RecommendationEntity.class, Document.class)
+                .collectMultimap(document -> document.get("_id", Document.class).getInteger("productId"))
+                .flatMapIterable(Map::entrySet)
+                .map(product -> {
+                    Map<String, Long> histogram = new HashMap<>();
+                    long count = 0;
+                    long ratingSum = 0;
+                    for (Document group : product.getValue()) {
+                        int rating = group.get("_id", Document.class).getInteger("rating");
+                        long ratingCount = ((Number) group.get("count")).longValue();
+                        histogram.put(String.valueOf(rating), ratingCount);
+                        count += ratingCount;
+                        ratingSum += rating * ratingCount;
+                    }
+                    return new RecommendationStatisticsEntity(product.getKey(), count, ratingSum, histogram);
+                });
+    }
+
+    /**
+     * Stores computed statistics unless the product got a statistics document in the meantime, which is then used instead.
+     */
+    private Mono<RecommendationStatisticsEntity> backfill(RecommendationStatisticsEntity computed) {
+        LOG.debug("Stores the aggregated recommendation statistics of product {}", computed.getProductId());
+        return mongoTemplate.insert(computed)
+                .onErrorResume(DuplicateKeyException.class,
+                        ex -> mongoTemplate.findById(computed.getProductId(), RecommendationStatisticsEntity.class));
+    }
+
+    private RecommendationStatistics toApi(RecommendationStatisticsEntity entity) {
+        Map<Integer, Long> histogram = new TreeMap<>();
+        if (entity.getHistogram() != null) {
+            entity.getHistogram().forEach((rating, count) -> {
+                if (count > 0) {
+                    histogram.put(Integer.valueOf(rating), count);
+                }
+            });
+        }
+        double average = entity.getCount() == 0 ? 0 : (double) entity.getRatingSum() / entity.getCount();
+        return new RecommendationStatistics(entity.getProductId(), entity.getCount(), average, histogram);
+    }
+}
@@ -71,6 +71,16 @@ public class PersistenceTests  extends MongoDbTestBase{
         assertNotEquals(Boolean.TRUE, repository.existsById(savedEntity.getId()).block());
     }
 
+    @Test
+    void deleteByProductId() {
+        repository.save(RecommendationEntity.builder().productId(1).recommendationId(3).author("a").rating(3).content("c").build()).block();
+        repository.save(RecommendationEntity.builder().productId(2).recommendationId(1).author("a").rating(3).content("c").build()).block();
+
+        assertEquals(2L, repository.deleteByProductId(1).block());
+        assertThat(repository.findByProductId(1).collectList().block(), hasSize(0));
+        assertEquals(1L, repository.count().block());
+    }
+
     @Test
     void getByProductId() {
         List<RecommendationEntity> entityList = repository.findByProductId(savedEntity.getProductId()).collectList().block();
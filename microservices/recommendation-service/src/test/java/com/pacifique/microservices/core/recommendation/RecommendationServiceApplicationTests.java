@@ -1,29 +1,50 @@
 package com.pacifique.microservices.core.recommendation;
 
 import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.recommendation.RecommendationPage;
 import com.pacifique.microservices.api.event‎.Event;
+import com.pacifique.microservices.api.core.recommendation.RecommendationStatistics;
 import com.pacifique.microservices.api.exceptions.InvalidInputException;
+import com.pacifique.microservices.core.recommendation.persistance.RecommendationEntity;
 import com.pacifique.microservices.core.recommendation.persistance.RecommendationRepository;
+import com.pacifique.microservices.core.recommendation.persistance.RecommendationStatisticsEntity;
+import com.pacifique.microservices.util.messaging.ProcessedEvents;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpStatus;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
-import java.util.function.Consumer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.pacifique.microservices.api.event‎.Event.Type.CREATE;
 import static com.pacifique.microservices.api.event‎.Event.Type.DELETE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 
 @SpringBootTest(webEnvironment = RANDOM_PORT,properties = "eureka.client.enabled=false")
+@Import({TestChannelBinderConfiguration.class})
 class RecommendationServiceApplicationTests extends MongoDbTestBase{
 	@Autowired
 	private WebTestClient client;
@@ -31,13 +52,21 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase{
 	@Autowired
 	private RecommendationRepository repository;
 
+	@Autowired
+	private ReactiveMongoOperations mongoTemplate;
+
+	@Autowired
+	private OutputDestination target;
+
 	@Autowired
 	@Qualifier("messageProcessor")
-	private Consumer<Event<Integer,Recommendation>> messageProcessor;
+	private Function<Flux<Message<Event<Integer, Recommendation>>>, Mono<Void>> messageProcessor;
 
 	@BeforeEach
 	void setupDb() {
 		StepVerifier.create(repository.deleteAll()).verifyComplete();
+		mongoTemplate.remove(new Query(), RecommendationStatisticsEntity.class).block();
+		target.clear();
 	}
 
 	@Test
@@ -57,6 +86,116 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase{
 				.jsonPath("$[2].recommendationId").isEqualTo(3);
 	}
 
+	@Test
+	void getRecommendationsByProductIds() {
+
+		sendCreateRecommendationEvent(1,1);
+		sendCreateRecommendationEvent(1,2);
+		sendCreateRecommendationEvent(2,1);
+		sendCreateRecommendationEvent(3,1);
+
+		getAndVerifyRecommendationsByProductId("?productIds=1,2", OK)
+				.jsonPath("$.length()").isEqualTo(3);
+	}
+
+	@Test
+	void getRecommendationsTooManyProductIds() {
+
+		String productIds = IntStream.rangeClosed(1, 201).mapToObj(Integer::toString).collect(Collectors.joining(","));
+
+		getAndVerifyRecommendationsByProductId("?productIds=" + productIds, UNPROCESSABLE_ENTITY)
+				.jsonPath("$.message").isEqualTo("Too many product ids: 201, max is: 200");
+		getAndVerifyRecommendationsByProductId("/statistics?productIds=" + productIds, UNPROCESSABLE_ENTITY)
+				.jsonPath("$.message").isEqualTo("Too many product ids: 201, max is: 200");
+	}
+
+	@Test
+	void getRecommendationPages() {
+
+		int productId = 1;
+		for (int recommendationId = 1; recommendationId <= 5; recommendationId++) {
+			sendCreateRecommendationEvent(productId, recommendationId);
+		}
+		sendCreateRecommendationEvent(2, 1);
+
+		List<Integer> recommendationIds = new ArrayList<>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			RecommendationPage page = getRecommendationPage(productId, 2, cursor);
+			page.getRecommendations().forEach(r -> recommendationIds.add(r.getRecommendationId()));
+			cursor = page.getNextCursor();
+			pages++;
+		} while (cursor != null);
+
+		assertEquals(3, pages);
+		assertEquals(List.of(1, 2, 3, 4, 5), recommendationIds);
+	}
+
+	@Test
+	void getRecommendationPageInvalidCursor() {
+
+		getAndVerifyRecommendationsByProductId("?productId=1&limit=2&cursor=invalid", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.message").isEqualTo("Invalid cursor: invalid for productId: 1");
+	}
+
+	@Test
+	void getRecommendationStatistics() {
+
+		int productId = 1;
+		// The rating of each recommendation is its recommendationId
+		messageProcessor.apply(messages(
+				createRecommendationEvent(productId, 1),
+				createRecommendationEvent(productId, 3),
+				createRecommendationEvent(2, 5))).block();
+		sendCreateRecommendationEvent(productId, 5);
+		// The duplicate does not change the statistics
+		sendCreateRecommendationEvent(productId, 5);
+
+		RecommendationStatistics statistics = getRecommendationStatistics(productId);
+		assertEquals(3, statistics.getCount());
+		assertEquals(3.0, statistics.getAverageRating());
+		assertEquals(Map.of(1, 1L, 3, 1L, 5, 1L), statistics.getRatingHistogram());
+
+		sendDeleteRecommendationEvent(productId);
+		statistics = getRecommendationStatistics(productId);
+		assertEquals(0, statistics.getCount());
+		assertEquals(1, getRecommendationStatistics(2).getCount());
+	}
+
+	@Test
+	void getRecommendationStatisticsAggregatedWhenMissing() {
+
+		// Stored without updating the statistics
+		repository.save(RecommendationEntity.builder().productId(1).recommendationId(1).author("a").rating(2).content("c").build()).block();
+		repository.save(RecommendationEntity.builder().productId(1).recommendationId(2).author("a").rating(4).content("c").build()).block();
+
+		RecommendationStatistics statistics = getRecommendationStatistics(1);
+		assertEquals(2, statistics.getCount());
+		assertEquals(3.0, statistics.getAverageRating());
+		assertEquals(Map.of(2, 1L, 4, 1L), statistics.getRatingHistogram());
+
+		// The aggregated statistics are stored
+		assertEquals(1L, mongoTemplate.count(new Query(), RecommendationStatisticsEntity.class).block());
+	}
+
+	@Test
+	void getRecommendationStatisticsIncludesRecommendationsStoredBefore() {
+
+		// Stored without updating the statistics, then a recommendation is created and its statistics document inserted
+		repository.save(RecommendationEntity.builder().productId(1).recommendationId(1).author("a").rating(1).content("c").build()).block();
+		sendCreateRecommendationEvent(1, 3);
+
+		RecommendationStatistics statistics = getRecommendationStatistics(1);
+		assertEquals(2, statistics.getCount());
+		assertEquals(2.0, statistics.getAverageRating());
+		assertEquals(Map.of(1, 1L, 3, 1L), statistics.getRatingHistogram());
+
+		// Later recommendations are added to the computed statistics
+		sendCreateRecommendationEvent(1, 5);
+		assertEquals(3, getRecommendationStatistics(1).getCount());
+	}
+
 	@Test
 	void duplicateError() {
 
@@ -67,12 +206,28 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase{
 
 		assertEquals(1,repository.count().block());
 
-		InvalidInputException thrown = assertThrows(InvalidInputException.class,
-				() -> sendCreateRecommendationEvent(productId,recommendationId),
-				"Expected a InvalidInputException here!");
+		// The duplicate is dead lettered instead of failing the stream of events
+		sendCreateRecommendationEvent(productId,recommendationId);
 
-		assertEquals("Duplicate key, Product Id: 1, Recommendation Id: 1", thrown.getMessage());
 		assertEquals(1,repository.count().block());
+		Message<byte[]> deadLetter = target.receive(0, "DLX");
+		assertNotNull(deadLetter);
+		assertEquals(InvalidInputException.class.getName(), deadLetter.getHeaders().get(ProcessedEvents.EXCEPTION_TYPE_HEADER));
+		assertNull(target.receive(0, "DLX"));
+	}
+
+	@Test
+	void processBatchOfEvents() {
+
+		messageProcessor.apply(messages(
+				createRecommendationEvent(1,1),
+				createRecommendationEvent(1,2),
+				createRecommendationEvent(1,1),
+				createRecommendationEvent(1,3),
+				createRecommendationEvent(2,1))).block();
+
+		// The duplicate is dead lettered and the other recommendations of the batch are stored
+		assertEquals(4,repository.count().block());
 	}
 
 	@Test
@@ -139,14 +294,42 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase{
 	}
 
 
+	private RecommendationPage getRecommendationPage(int productId, int limit, String cursor) {
+		return client.get()
+				.uri("/recommendation?productId=" + productId + "&limit=" + limit + (cursor == null ? "" : "&cursor=" + cursor))
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody(RecommendationPage.class)
+				.returnResult().getResponseBody();
+	}
+
+	private RecommendationStatistics getRecommendationStatistics(int productId) {
+		return client.get()
+				.uri("/recommendation/statistics?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody(RecommendationStatistics.class)
+				.returnResult().getResponseBody();
+	}
+
 	private void sendCreateRecommendationEvent(int productId, int recommendationId) {
+		messageProcessor.apply(messages(createRecommendationEvent(productId, recommendationId))).block();
+	}
+
+	private Event<Integer,Recommendation> createRecommendationEvent(int productId, int recommendationId) {
 		Recommendation recommendation = new Recommendation(productId, recommendationId, "Author " + recommendationId, recommendationId, "Content " + recommendationId, "SA");
-		Event<Integer,Recommendation> event = new Event(recommendation, productId, CREATE);
-		messageProcessor.accept(event);
+		return new Event(recommendation, productId, CREATE);
 	}
 
 	private void sendDeleteRecommendationEvent(int productId) {
 		Event<Integer,Recommendation> event = new Event(null, productId, DELETE);
-		messageProcessor.accept(event);
+		messageProcessor.apply(messages(event)).block();
+	}
+
+	@SafeVarargs
+	private static Flux<Message<Event<Integer, Recommendation>>> messages(Event<Integer, Recommendation>... events) {
+		return Flux.just(events).map(event -> MessageBuilder.withPayload(event).build());
 	}
 }
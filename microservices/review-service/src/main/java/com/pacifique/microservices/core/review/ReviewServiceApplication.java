@@ -1,5 +1,6 @@
 package com.pacifique.microservices.core.review;
 
+import com.pacifique.microservices.util.reactor.BlockingSchedulers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,7 +10,6 @@ import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
 
 @SpringBootApplication
 @ComponentScan("com.pacifique")
@@ -25,9 +25,9 @@ public class ReviewServiceApplication {
 	}
 
 	@Bean
-	public Scheduler jdbcScheduler(){
+	public Scheduler jdbcScheduler(BlockingSchedulers blockingSchedulers){
 		LOG.info("Creates a jdbcScheduler with thread pool size = {}", threadPoolSize);
-		return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize,"jdbc-pool");
+		return blockingSchedulers.newScheduler("jdbc-pool", threadPoolSize, taskQueueSize);
 	}
 
 	public static void main(String[] args) {
@@ -15,7 +15,8 @@ import lombok.NoArgsConstructor;
 @Table(name = "reviews", indexes = { @Index(name = "reviews_unique_idx", unique = true, columnList = "productId,reviewId") })
 public class ReviewEntity {
 
-    @Id @GeneratedValue
+    // Generated by MySQL, like the ids of the reviews stored with R2DBC
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
 
     @Version
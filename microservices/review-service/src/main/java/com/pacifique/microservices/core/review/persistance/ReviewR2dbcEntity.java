@@ -0,0 +1,32 @@
+package com.pacifique.microservices.core.review.persistance;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * The review row used by the R2DBC persistence, stored in the same reviews table as {@link ReviewEntity}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table("reviews")
+public class ReviewR2dbcEntity {
+
+    @Id
+    private Integer id;
+
+    @Version
+    private Integer version;
+
+    private int productId;
+    private int reviewId;
+    private String author;
+    private String subject;
+    private String content;
+}
@@ -0,0 +1,24 @@
+package com.pacifique.microservices.core.review.persistance;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+@Repository
+public interface ReviewR2dbcRepository extends R2dbcRepository<ReviewR2dbcEntity, Integer> {
+    Flux<ReviewR2dbcEntity> findByProductId(int productId);
+
+    Flux<ReviewR2dbcEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    @Query("SELECT * FROM reviews WHERE product_id = :productId AND review_id > :reviewId ORDER BY review_id LIMIT :limit")
+    Flux<ReviewR2dbcEntity> findPage(int productId, int reviewId, int limit);
+
+    @Modifying
+    @Query("DELETE FROM reviews WHERE product_id = :productId")
+    Mono<Integer> deleteByProductId(int productId);
+}
@@ -1,13 +1,37 @@
 package com.pacifique.microservices.core.review.persistance;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer> {
     @Transactional(readOnly = true)
     List<ReviewEntity> findByProductId(int productId);
+
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    /**
+     * Gets the next page of the reviews of a product, using the unique (productId, reviewId) index.
+     */
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(int productId, int reviewId, Limit limit);
+
+    /**
+     * Deletes the reviews of the product with one DELETE statement, without loading them.
+     *
+     * @return the number of deleted reviews
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ReviewEntity r WHERE r.productId = :productId")
+    int deleteByProductId(@Param("productId") int productId);
 }
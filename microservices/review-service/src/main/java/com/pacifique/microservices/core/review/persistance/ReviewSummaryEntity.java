@@ -0,0 +1,30 @@
+package com.pacifique.microservices.core.review.persistance;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Projection of the reviews of a product, updated in the same transaction as the reviews.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "review_summary")
+public class ReviewSummaryEntity {
+
+    @Id
+    private int productId;
+
+    private int reviewCount;
+    private int latestReviewId;
+    private Instant lastUpdated;
+}
@@ -0,0 +1,35 @@
+package com.pacifique.microservices.core.review.persistance;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ReviewSummaryRepository extends CrudRepository<ReviewSummaryEntity, Integer> {
+
+    @Transactional(readOnly = true)
+    List<ReviewSummaryEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    /**
+     * Adds reviews to the summary of the product with one upsert, creating the summary for the first reviews of the product.
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = "INSERT INTO review_summary (product_id, review_count, latest_review_id, last_updated) " +
+            "VALUES (:productId, :count, :latestReviewId, :now) " +
+            "ON DUPLICATE KEY UPDATE review_count = review_count + :count, " +
+            "latest_review_id = GREATEST(latest_review_id, :latestReviewId), last_updated = :now")
+    int addReviews(@Param("productId") int productId, @Param("count") int count, @Param("latestReviewId") int latestReviewId, @Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ReviewSummaryEntity s WHERE s.productId = :productId")
+    int deleteByProductId(@Param("productId") int productId);
+}
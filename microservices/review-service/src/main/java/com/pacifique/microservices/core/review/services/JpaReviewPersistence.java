@@ -0,0 +1,100 @@
+package com.pacifique.microservices.core.review.services;
+
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.core.review.ReviewStatistics;
+import com.pacifique.microservices.api.exceptions.InvalidInputException;
+import com.pacifique.microservices.core.review.persistance.ReviewRepository;
+import com.pacifique.microservices.core.review.persistance.ReviewSummaryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.List;
+
+/**
+ * Runs the blocking JPA calls of {@link ReviewInternalRequestHandler} on the jdbcScheduler.
+ *
+ * The reviews and the review summaries of their products are written in the same transaction.
+ */
+@Component
+@Profile("!r2dbc")
+public class JpaReviewPersistence implements ReviewPersistence {
+    private final ReviewRepository repository;
+    private final ReviewSummaryRepository summaryRepository;
+    private final ReviewMapper mapper;
+    private final Scheduler jdbcScheduler;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public JpaReviewPersistence(
+            @Qualifier("jdbcScheduler") Scheduler jdbcScheduler,
+            ReviewRepository repository,
+            ReviewSummaryRepository summaryRepository,
+            ReviewMapper mapper,
+            PlatformTransactionManager transactionManager) {
+        this.jdbcScheduler = jdbcScheduler;
+        this.repository = repository;
+        this.summaryRepository = summaryRepository;
+        this.mapper = mapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public Mono<Review> createReview(Review body) {
+        return Mono.fromCallable(()-> {
+                    try {
+                        return transactionTemplate.execute(status -> ReviewInternalRequestHandler.internalCreateReview(body,repository,summaryRepository,mapper));
+                    } catch (DataIntegrityViolationException dive) {
+                        throw new InvalidInputException("Duplicate key, Product Id: " + body.getProductId() + ", Review Id:" + body.getReviewId());
+                    }
+                })
+                .subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Mono<Integer> createReviews(List<Review> bodies) {
+        return Mono.fromCallable(()-> transactionTemplate.execute(status -> ReviewInternalRequestHandler.internalCreateReviews(bodies,repository,summaryRepository,mapper)))
+                .subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId) {
+        return Mono.fromCallable(()-> ReviewInternalRequestHandler.internalGetReviews(productId,repository,mapper))
+                .flatMapMany(Flux::fromIterable)
+                .subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Flux<Review> getReviewsForProducts(List<Integer> productIds) {
+        return Mono.fromCallable(()-> ReviewInternalRequestHandler.internalGetReviewsForProducts(productIds,repository,mapper))
+                .flatMapMany(Flux::fromIterable)
+                .subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Flux<Review> getReviewPage(int productId, int afterReviewId, int limit) {
+        return Mono.fromCallable(()-> ReviewInternalRequestHandler.internalGetReviewPage(productId,afterReviewId,limit,repository,mapper))
+                .flatMapMany(Flux::fromIterable)
+                .subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Flux<ReviewStatistics> getReviewStatistics(List<Integer> productIds) {
+        return Mono.fromCallable(()-> ReviewInternalRequestHandler.internalGetReviewStatistics(productIds,summaryRepository))
+                .flatMapMany(Flux::fromIterable)
+                .subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Mono<Integer> deleteReviews(int productId) {
+        return Mono.fromCallable(() -> transactionTemplate.execute(status -> ReviewInternalRequestHandler.internalDeleteReview(productId,repository,summaryRepository)))
+                .subscribeOn(jdbcScheduler);
+    }
+}
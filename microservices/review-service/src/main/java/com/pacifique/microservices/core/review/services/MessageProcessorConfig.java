@@ -1,49 +1,168 @@
 package com.pacifique.microservices.core.review.services;
 
 import com.pacifique.microservices.api.core.review.Review;
-import com.pacifique.microservices.api.core.review.ReviewService;
 import com.pacifique.microservices.api.event‎.Event;
 import com.pacifique.microservices.api.exceptions.EventProcessingException;
+import com.pacifique.microservices.api.exceptions.InvalidInputException;
+import com.pacifique.microservices.util.messaging.EventMetrics;
+import com.pacifique.microservices.util.messaging.ProcessedEvents;
+import com.pacifique.microservices.util.reactor.BlockingSchedulers;
+import com.pacifique.microservices.util.tracing.RequestTracer;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
-import java.util.function.Consumer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * Processes the review events without blocking the binder threads.
+ *
+ * Events are spread over a fixed number of lanes by key, i.e. productId. Each lane processes its
+ * events in the order they were received, while the lanes run concurrently.
+ *
+ * The events of a lane are collected in batches of up to batchSize events. Consecutive create events
+ * in a batch are stored in one transaction using JDBC batching, all other events are processed one by one.
+ * A reactive function is not covered by the binder's retry and DLQ support, so failed events are
+ * retried here and then published to the dead-letter destination of the consumer group. A message is
+ * acked once its event is stored or dead lettered, see ProcessedEvents for what is redelivered or lost.
+ */
 @Configuration
 public class MessageProcessorConfig {
     private final static Logger LOG = LoggerFactory.getLogger(MessageProcessorConfig.class);
-    private final ReviewService reviewService;
+    private final ReviewServiceImpl reviewService;
+    private final EventMetrics eventMetrics;
+    private final ProcessedEvents processedEvents;
+    private final RequestTracer tracer;
+    private final int concurrency;
+    private final int batchSize;
+    private final Duration batchTimeout;
+    private final int maxAttempts;
+    private final Duration backOffInitialInterval;
+    private final Duration backOffMaxInterval;
 
     @Autowired
-    public MessageProcessorConfig(ReviewService reviewService) {
+    public MessageProcessorConfig(
+            ReviewServiceImpl reviewService,
+            StreamBridge streamBridge,
+            MeterRegistry meterRegistry,
+            RequestTracer tracer,
+            BlockingSchedulers blockingSchedulers,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.destination}") String destination,
+            @Value("${app.messageProcessor.concurrency:16}") Integer concurrency,
+            @Value("${app.messageProcessor.batchSize:100}") Integer batchSize,
+            @Value("${app.messageProcessor.batchTimeoutMs:50}") Integer batchTimeoutMs,
+            @Value("${app.messageProcessor.maxAttempts:3}") Integer maxAttempts,
+            @Value("${app.messageProcessor.backOffInitialInterval:500}") Integer backOffInitialInterval,
+            @Value("${app.messageProcessor.backOffMaxInterval:1000}") Integer backOffMaxInterval,
+            @Value("${app.messageProcessor.publishThreadPoolSize:4}") Integer publishThreadPoolSize) {
         this.reviewService = reviewService;
+        this.eventMetrics = new EventMetrics(meterRegistry, destination);
+        // A lane waits for its publish, so at most one publish per lane is queued
+        this.processedEvents = new ProcessedEvents(streamBridge,
+                blockingSchedulers.newScheduler("publish-pool", publishThreadPoolSize, concurrency), eventMetrics);
+        this.tracer = tracer;
+        this.concurrency = concurrency;
+        this.batchSize = batchSize;
+        this.batchTimeout = Duration.ofMillis(batchTimeoutMs);
+        this.maxAttempts = maxAttempts;
+        this.backOffInitialInterval = Duration.ofMillis(backOffInitialInterval);
+        this.backOffMaxInterval = Duration.ofMillis(backOffMaxInterval);
     }
 
     @Bean
-    public Consumer<Event<Integer, Review>> messageProcessor() {
-        return event -> {
-            LOG.info("Process message created at {}...", event.getEventCreatedAt());
-            switch (event.getEventType()) {
-                case CREATE:
-                    Review review = event.getData();
-                    LOG.info("Create review with ID: {}/{}", review.getProductId(), review.getReviewId());
-                    reviewService.createReview(review).block();
-                    break;
-                case DELETE:
-                    int productId = event.getKey();
-                    LOG.info("Delete productID: {}", event.getKey());
-                    reviewService.deleteReviews(productId).block();
-                    break;
-                default:
-                    String errorMessage = "Incorrect event type: " + event.getEventType();
-                    LOG.warn(errorMessage);
-                    throw new EventProcessingException(errorMessage);
+    public Function<Flux<Message<Event<Integer, Review>>>, Mono<Void>> messageProcessor() {
+        return messages -> messages
+                .doOnNext(eventMetrics::recordConsumed)
+                .groupBy(message -> Math.floorMod(Objects.hashCode(message.getPayload().getKey()), concurrency))
+                .flatMap(lane -> lane
+                        .bufferTimeout(batchSize, batchTimeout, true)
+                        .concatMap(this::processBatch), concurrency)
+                .then();
+    }
+
+    private Mono<Void> processBatch(List<Message<Event<Integer, Review>>> batch) {
+        List<Mono<Void>> steps = new ArrayList<>();
+        List<Message<Event<Integer, Review>>> creates = new ArrayList<>();
+        for (Message<Event<Integer, Review>> message : batch) {
+            if (isValidCreate(message.getPayload())) {
+                creates.add(message);
+            } else {
+                if (!creates.isEmpty()) {
+                    steps.add(createInBulk(creates));
+                    creates = new ArrayList<>();
+                }
+                steps.add(processEvent(message));
             }
-            LOG.info("Message processing done!");
-        };
+        }
+        if (!creates.isEmpty()) {
+            steps.add(createInBulk(creates));
+        }
+        return Flux.concat(steps).then();
     }
 
+    /**
+     * Stores the reviews of the create events in one transaction. If the transaction fails, nothing is
+     * stored and the events are split in two halves that are stored separately, until the failing
+     * events are processed on their own, to be retried or dead lettered.
+     */
+    private Mono<Void> createInBulk(List<Message<Event<Integer, Review>>> messages) {
+        if (messages.size() == 1) {
+            return processEvent(messages.get(0));
+        }
+        return Mono.defer(() -> reviewService.createReviews(messages.stream().map(message -> message.getPayload().getData()).collect(Collectors.toList())))
+                .doOnNext(count -> LOG.debug("Created {} reviews in one transaction", count))
+                .then(Mono.defer(() -> processedEvents.stored(messages)))
+                .onErrorResume(ex -> {
+                    LOG.debug("Storing {} reviews in one transaction failed, will split them: {}", messages.size(), ex.toString());
+                    int half = messages.size() / 2;
+                    return createInBulk(messages.subList(0, half))
+                            .then(createInBulk(messages.subList(half, messages.size())));
+                });
+    }
+
+    private Mono<Void> processEvent(Message<Event<Integer, Review>> message) {
+        Event<Integer, Review> event = message.getPayload();
+        return tracer.trace("processEvent", event.getKey(), Mono.defer(() -> handleEvent(event)))
+                .retryWhen(Retry.backoff(maxAttempts - 1, backOffInitialInterval)
+                        .maxBackoff(backOffMaxInterval)
+                        .filter(ex -> !(ex instanceof InvalidInputException || ex instanceof EventProcessingException)))
+                .then(Mono.defer(() -> processedEvents.stored(message)))
+                .onErrorResume(ex -> {
+                    LOG.warn("Failed to process message created at {}, will dead letter it: {}", event.getEventCreatedAt(), ex.toString());
+                    return processedEvents.deadLetter(message, ex);
+                });
+    }
+
+    private Mono<Void> handleEvent(Event<Integer, Review> event) {
+        switch (event.getEventType()) {
+            case CREATE:
+                Review review = event.getData();
+                return reviewService.createReview(review).then();
+            case DELETE:
+                int productId = event.getKey();
+                return reviewService.deleteReviews(productId);
+            default:
+                String errorMessage = "Incorrect event type: " + event.getEventType();
+                LOG.warn(errorMessage);
+                return Mono.error(new EventProcessingException(errorMessage));
+        }
+    }
+
+    private boolean isValidCreate(Event<Integer, Review> event) {
+        return event.getEventType() == Event.Type.CREATE && event.getData() != null && event.getData().getProductId() >= 1;
+    }
 }
@@ -0,0 +1,132 @@
+package com.pacifique.microservices.core.review.services;
+
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.core.review.ReviewStatistics;
+import com.pacifique.microservices.api.exceptions.InvalidInputException;
+import com.pacifique.microservices.core.review.persistance.ReviewR2dbcEntity;
+import com.pacifique.microservices.core.review.persistance.ReviewR2dbcRepository;
+import io.r2dbc.spi.R2dbcDataIntegrityViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Stores the reviews with the non-blocking R2DBC driver, the calls run on the event loop instead of the jdbcScheduler.
+ *
+ * The review_summary table is updated with SQL statements, in the same transaction as the reviews. Its timestamps are in UTC.
+ */
+@Component
+@Profile("r2dbc")
+public class R2dbcReviewPersistence implements ReviewPersistence {
+    private static final Logger LOG = LoggerFactory.getLogger(R2dbcReviewPersistence.class);
+    private final ReviewR2dbcRepository repository;
+    private final ReviewMapper mapper;
+    private final TransactionalOperator transactionalOperator;
+    private final DatabaseClient databaseClient;
+
+    @Autowired
+    public R2dbcReviewPersistence(ReviewR2dbcRepository repository, ReviewMapper mapper, TransactionalOperator transactionalOperator, DatabaseClient databaseClient) {
+        this.repository = repository;
+        this.mapper = mapper;
+        this.transactionalOperator = transactionalOperator;
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Mono<Review> createReview(Review body) {
+        return repository.save(mapper.apiToR2dbcEntity(body))
+                .flatMap(saved -> addToSummary(body.getProductId(), 1, body.getReviewId(), Instant.now()).thenReturn(saved))
+                .as(transactionalOperator::transactional)
+                .onErrorMap(this::isDuplicateKey,
+                        ex -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId() + ", Review Id:" + body.getReviewId()))
+                .doOnNext(e -> LOG.debug("createReview: created a review entity: {}/{}", body.getProductId(), body.getReviewId()))
+                .map(mapper::r2dbcEntityToApi);
+    }
+
+    @Override
+    public Mono<Integer> createReviews(List<Review> bodies) {
+        List<ReviewR2dbcEntity> entities = bodies.stream().map(mapper::apiToR2dbcEntity).collect(Collectors.toList());
+        Instant now = Instant.now();
+        Map<Integer, IntSummaryStatistics> perProduct = entities.stream()
+                .collect(Collectors.groupingBy(ReviewR2dbcEntity::getProductId, Collectors.summarizingInt(ReviewR2dbcEntity::getReviewId)));
+
+        return repository.saveAll(entities)
+                .count()
+                .flatMap(count -> Flux.fromIterable(perProduct.entrySet())
+                        .concatMap(product -> addToSummary(product.getKey(), (int) product.getValue().getCount(), product.getValue().getMax(), now))
+                        .then(Mono.just(count.intValue())))
+                .as(transactionalOperator::transactional)
+                .doOnNext(count -> LOG.debug("createReviews: created {} review entities", count));
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId) {
+        return repository.findByProductId(productId)
+                .map(mapper::r2dbcEntityToApi);
+    }
+
+    @Override
+    public Flux<Review> getReviewsForProducts(List<Integer> productIds) {
+        return repository.findByProductIdIn(productIds)
+                .map(mapper::r2dbcEntityToApi);
+    }
+
+    @Override
+    public Flux<Review> getReviewPage(int productId, int afterReviewId, int limit) {
+        return repository.findPage(productId, afterReviewId, limit)
+                .map(mapper::r2dbcEntityToApi);
+    }
+
+    @Override
+    public Flux<ReviewStatistics> getReviewStatistics(List<Integer> productIds) {
+        return databaseClient.sql("SELECT product_id, review_count, latest_review_id, last_updated FROM review_summary WHERE product_id IN (:productIds)")
+                .bind("productIds", productIds)
+                .map(row -> new ReviewStatistics(
+                        row.get("product_id", Integer.class),
+                        row.get("review_count", Integer.class),
+                        row.get("latest_review_id", Integer.class),
+                        row.get("last_updated", LocalDateTime.class).toInstant(ZoneOffset.UTC)))
+                .all();
+    }
+
+    @Override
+    public Mono<Integer> deleteReviews(int productId) {
+        return repository.deleteByProductId(productId)
+                .flatMap(count -> databaseClient.sql("DELETE FROM review_summary WHERE product_id = :productId")
+                        .bind("productId", productId)
+                        .fetch().rowsUpdated()
+                        .thenReturn(count))
+                .as(transactionalOperator::transactional);
+    }
+
+    private Mono<Long> addToSummary(int productId, int count, int latestReviewId, Instant now) {
+        return databaseClient.sql("INSERT INTO review_summary (product_id, review_count, latest_review_id, last_updated) " +
+                        "VALUES (:productId, :count, :latestReviewId, :now) " +
+                        "ON DUPLICATE KEY UPDATE review_count = review_count + :count, " +
+                        "latest_review_id = GREATEST(latest_review_id, :latestReviewId), last_updated = :now")
+                .bind("productId", productId)
+                .bind("count", count)
+                .bind("latestReviewId", latestReviewId)
+                .bind("now", LocalDateTime.ofInstant(now, ZoneOffset.UTC))
+                .fetch().rowsUpdated();
+    }
+
+    private boolean isDuplicateKey(Throwable ex) {
+        return ex instanceof DataIntegrityViolationException || ex instanceof R2dbcDataIntegrityViolationException;
+    }
+}
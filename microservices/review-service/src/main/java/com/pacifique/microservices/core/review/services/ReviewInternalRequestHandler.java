@@ -1,43 +1,87 @@
 package com.pacifique.microservices.core.review.services;
 
 import com.pacifique.microservices.api.core.review.Review;
-import com.pacifique.microservices.api.exceptions.InvalidInputException;
+import com.pacifique.microservices.api.core.review.ReviewStatistics;
 import com.pacifique.microservices.core.review.persistance.ReviewEntity;
 import com.pacifique.microservices.core.review.persistance.ReviewRepository;
-import com.pacifique.microservices.util.http.ServiceUtil;
+import com.pacifique.microservices.core.review.persistance.ReviewSummaryRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 
+import java.time.Instant;
+import java.util.IntSummaryStatistics;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class ReviewInternalRequestHandler {
     private static final Logger LOG = LoggerFactory.getLogger(ReviewInternalRequestHandler.class);
 
-    protected static Review internalCreateReview(Review body,ReviewRepository repository,ReviewMapper mapper) {
-        try {
-            ReviewEntity entity = mapper.apiToEntity(body);
-            ReviewEntity newReview = repository.save(entity);
-            LOG.debug("createReview: created a review entity: {}/{}",body.getProductId(),body.getReviewId());
-            return mapper.entityToApi(newReview);
+    /**
+     * Stores the review and adds it to the summary of its product, to be called in a transaction.
+     * A duplicate review fails the transaction with a DataIntegrityViolationException.
+     */
+    protected static Review internalCreateReview(Review body, ReviewRepository repository, ReviewSummaryRepository summaryRepository, ReviewMapper mapper) {
+        ReviewEntity entity = mapper.apiToEntity(body);
+        ReviewEntity newReview = repository.save(entity);
+        summaryRepository.addReviews(body.getProductId(), 1, body.getReviewId(), Instant.now());
+        LOG.debug("createReview: created a review entity: {}/{}",body.getProductId(),body.getReviewId());
+        return mapper.entityToApi(newReview);
+    }
+
+    /**
+     * Stores the reviews and adds them to the summaries of their products with one upsert per product, to be called in a transaction.
+     */
+    protected static int internalCreateReviews(List<Review> bodies, ReviewRepository repository, ReviewSummaryRepository summaryRepository, ReviewMapper mapper) {
+        List<ReviewEntity> entities = mapper.apiListToEntityList(bodies);
+        // With JDBC batching the inserts are sent in batches of hibernate.jdbc.batch_size
+        repository.saveAll(entities);
 
-        }catch (DataIntegrityViolationException dive) {
-            throw new InvalidInputException("Duplicate key, Product Id: " + body.getProductId() + ", Review Id:" + body.getReviewId());
-        }
+        Instant now = Instant.now();
+        Map<Integer, IntSummaryStatistics> perProduct = entities.stream()
+                .collect(Collectors.groupingBy(ReviewEntity::getProductId, Collectors.summarizingInt(ReviewEntity::getReviewId)));
+        perProduct.forEach((productId, reviewIds) -> summaryRepository.addReviews(productId, (int) reviewIds.getCount(), reviewIds.getMax(), now));
+        LOG.debug("createReviews: created {} review entities for {} products", entities.size(), perProduct.size());
+        return entities.size();
     }
 
-    protected static List<Review> internalGetReviews(int productId, ReviewRepository repository, ServiceUtil serviceUtil,ReviewMapper mapper) {
+    protected static List<Review> internalGetReviews(int productId, ReviewRepository repository, ReviewMapper mapper) {
         List<ReviewEntity> entityList = repository.findByProductId(productId);
         List<Review> list = mapper.entityListToApiList(entityList);
-        list.forEach(e->e.setServiceAddress(serviceUtil.getServiceAddress()));
 
         LOG.debug("Response size: {}", list.size());
         return list;
 
     }
 
-    protected static void internalDeleteReview(int productId, ReviewRepository repository) {
+    protected static List<Review> internalGetReviewsForProducts(List<Integer> productIds, ReviewRepository repository, ReviewMapper mapper) {
+        List<ReviewEntity> entityList = repository.findByProductIdIn(productIds);
+        List<Review> list = mapper.entityListToApiList(entityList);
+
+        LOG.debug("Response size: {} for {} products", list.size(), productIds.size());
+        return list;
+    }
+
+    protected static List<Review> internalGetReviewPage(int productId, int afterReviewId, int limit, ReviewRepository repository, ReviewMapper mapper) {
+        List<ReviewEntity> entityList = repository.findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(productId, afterReviewId, Limit.of(limit));
+        LOG.debug("Page size: {} after reviewId: {}", entityList.size(), afterReviewId);
+        return mapper.entityListToApiList(entityList);
+    }
+
+    /**
+     * Deletes the reviews and the summary of the product, to be called in a transaction.
+     */
+    protected static int internalDeleteReview(int productId, ReviewRepository repository, ReviewSummaryRepository summaryRepository) {
         LOG.debug("deleteReview: tries to delete reviews for the product with productId: {}", productId);
-        repository.deleteAll(repository.findByProductId(productId));
+        int count = repository.deleteByProductId(productId);
+        summaryRepository.deleteByProductId(productId);
+        return count;
+    }
+
+    protected static List<ReviewStatistics> internalGetReviewStatistics(List<Integer> productIds, ReviewSummaryRepository summaryRepository) {
+        return summaryRepository.findByProductIdIn(productIds).stream()
+                .map(s -> new ReviewStatistics(s.getProductId(), s.getReviewCount(), s.getLatestReviewId(), s.getLastUpdated()))
+                .collect(Collectors.toList());
     }
 }
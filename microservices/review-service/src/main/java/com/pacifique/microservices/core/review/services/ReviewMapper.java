@@ -2,6 +2,7 @@ package com.pacifique.microservices.core.review.services;
 
 import com.pacifique.microservices.api.core.review.Review;
 import com.pacifique.microservices.core.review.persistance.ReviewEntity;
+import com.pacifique.microservices.core.review.persistance.ReviewR2dbcEntity;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Mappings;
@@ -23,4 +24,15 @@ public interface ReviewMapper {
     ReviewEntity apiToEntity(Review api);
     List<Review> entityListToApiList(List<ReviewEntity> entities);
     List<ReviewEntity> apiListToEntityList(List<Review> apiList);
+
+    @Mappings({
+            @Mapping(target = "serviceAddress",ignore = true)
+    })
+    Review r2dbcEntityToApi(ReviewR2dbcEntity entity);
+
+    @Mappings({
+            @Mapping(target = "id",ignore = true),
+            @Mapping(target = "version",ignore = true)
+    })
+    ReviewR2dbcEntity apiToR2dbcEntity(Review api);
 }
@@ -0,0 +1,48 @@
+package com.pacifique.microservices.core.review.services;
+
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.core.review.ReviewStatistics;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Stores the reviews, either with JPA on the jdbcScheduler or with R2DBC when the r2dbc profile is active.
+ *
+ * Both implementations keep a review unique per productId and reviewId, storing a duplicate fails
+ * with an InvalidInputException. The review_summary of a product is updated in the same transaction
+ * as its reviews.
+ */
+public interface ReviewPersistence {
+
+    Mono<Review> createReview(Review body);
+
+    /**
+     * Stores the reviews in one transaction, if any of the reviews can't be stored, none of them are.
+     *
+     * @return the number of stored reviews
+     */
+    Mono<Integer> createReviews(List<Review> bodies);
+
+    Flux<Review> getReviews(int productId);
+
+    Flux<Review> getReviewsForProducts(List<Integer> productIds);
+
+    /**
+     * @return up to limit reviews of the product with a reviewId greater than afterReviewId, ordered by reviewId
+     */
+    Flux<Review> getReviewPage(int productId, int afterReviewId, int limit);
+
+    /**
+     * @return the review summaries of the products that have reviews
+     */
+    Flux<ReviewStatistics> getReviewStatistics(List<Integer> productIds);
+
+    /**
+     * Deletes the reviews of the product with one statement.
+     *
+     * @return the number of deleted reviews
+     */
+    Mono<Integer> deleteReviews(int productId);
+}
@@ -1,35 +1,40 @@
 package com.pacifique.microservices.core.review.services;
 
 import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.core.review.ReviewPage;
 import com.pacifique.microservices.api.core.review.ReviewService;
+import com.pacifique.microservices.api.core.review.ReviewStatistics;
 import com.pacifique.microservices.api.exceptions.InvalidInputException;
-import com.pacifique.microservices.core.review.persistance.ReviewRepository;
 import com.pacifique.microservices.util.http.ServiceUtil;
+import com.pacifique.microservices.util.paging.KeysetCursor;
+import com.pacifique.microservices.util.tracing.RequestTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Scheduler;
 
-import static java.util.logging.Level.FINE;
+import java.util.List;
 
 @RestController
 public class ReviewServiceImpl implements ReviewService {
     private static final Logger LOG = LoggerFactory.getLogger(ReviewServiceImpl.class);
     private final ServiceUtil serviceUtil;
-    private final ReviewRepository repository;
-    private final ReviewMapper mapper;
-    private final Scheduler jdbcScheduler;
+    private final ReviewPersistence persistence;
+    private final RequestTracer tracer;
+    private final int maxPageSize;
+    private final int maxBatchSize;
 
     @Autowired
-    public ReviewServiceImpl(@Qualifier("jdbcScheduler") Scheduler jdbcScheduler,  ServiceUtil serviceUtil, ReviewRepository repository, ReviewMapper mapper) {
-        this.jdbcScheduler = jdbcScheduler;
+    public ReviewServiceImpl(ServiceUtil serviceUtil, ReviewPersistence persistence, RequestTracer tracer,
+                             @Value("${app.maxPageSize:1000}") Integer maxPageSize, @Value("${app.maxBatchSize:200}") Integer maxBatchSize) {
         this.serviceUtil = serviceUtil;
-        this.repository = repository;
-        this.mapper = mapper;
+        this.persistence = persistence;
+        this.tracer = tracer;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
@@ -38,8 +43,17 @@ public class ReviewServiceImpl implements ReviewService {
             throw new InvalidInputException("Invalid productId: " +body.getProductId());
         }
 
-        return Mono.fromCallable(()-> ReviewInternalRequestHandler.internalCreateReview(body,repository,mapper))
-                .subscribeOn(jdbcScheduler);
+        return tracer.trace("createReview", body.getProductId(), persistence.createReview(body));
+    }
+
+    /**
+     * Stores the reviews in one transaction, used by the message processor for batches of create events.
+     * If any of the reviews can't be stored, none of them are.
+     *
+     * @return the number of stored reviews
+     */
+    public Mono<Integer> createReviews(List<Review> bodies) {
+        return tracer.trace("createReviews", bodies.size(), persistence.createReviews(bodies));
     }
 
     @Override
@@ -48,16 +62,85 @@ public class ReviewServiceImpl implements ReviewService {
             throw new InvalidInputException("Invalid productId: " +productId);
         }
 
-        return Mono.fromCallable(()-> ReviewInternalRequestHandler.internalGetReviews(productId,repository,serviceUtil,mapper))
-                .flatMapMany(Flux::fromIterable)
-                .log(LOG.getName(), FINE)
-                .subscribeOn(jdbcScheduler);
+        return tracer.trace("getReviews", productId, persistence.getReviews(productId))
+                .map(this::setServiceAddress);
+    }
+
+    @Override
+    public Mono<ReviewPage> getReviewPage(int productId, int limit, String cursor) {
+        if (productId <1){
+            throw new InvalidInputException("Invalid productId: " +productId);
+        }
+        KeysetCursor.validateLimit(limit, maxPageSize);
+        int afterReviewId = KeysetCursor.decode(cursor, productId);
+
+        // One more review than the page holds tells if there is a next page
+        return tracer.trace("getReviewPage", productId, persistence.getReviewPage(productId, afterReviewId, limit + 1))
+                .map(this::setServiceAddress)
+                .collectList()
+                .map(reviews -> {
+                    if (reviews.size() <= limit) {
+                        return new ReviewPage(reviews, null);
+                    }
+                    List<Review> page = reviews.subList(0, limit);
+                    return new ReviewPage(page, KeysetCursor.encode(productId, page.get(limit - 1).getReviewId()));
+                });
+    }
+
+    @Override
+    public Flux<Review> getReviewsForProducts(List<Integer> productIds) {
+        ServiceUtil.checkBatchSize(productIds, maxBatchSize);
+        productIds.forEach(productId -> {
+            if (productId < 1) {
+                throw new InvalidInputException("Invalid productId: " + productId);
+            }
+        });
+
+        return tracer.trace("getReviewsForProducts", productIds.size(), persistence.getReviewsForProducts(productIds))
+                .map(this::setServiceAddress);
+    }
+
+    @Override
+    public Mono<ReviewStatistics> getReviewStatistics(int productId) {
+        if (productId <1){
+            throw new InvalidInputException("Invalid productId: " +productId);
+        }
+
+        return tracer.trace("getReviewStatistics", productId, persistence.getReviewStatistics(List.of(productId))
+                .next()
+                .defaultIfEmpty(new ReviewStatistics(productId, 0, 0, null)));
+    }
+
+    @Override
+    public Flux<ReviewStatistics> getReviewStatisticsForProducts(List<Integer> productIds) {
+        ServiceUtil.checkBatchSize(productIds, maxBatchSize);
+        productIds.forEach(productId -> {
+            if (productId < 1) {
+                throw new InvalidInputException("Invalid productId: " + productId);
+            }
+        });
+
+        if (productIds.isEmpty()) {
+            return Flux.empty();
+        }
+
+        // Products without reviews have no summary row, they are answered with a count of 0
+        return tracer.trace("getReviewStatisticsForProducts", productIds.size(), persistence.getReviewStatistics(productIds))
+                .collectMap(ReviewStatistics::getProductId)
+                .flatMapMany(found -> Flux.fromStream(productIds.stream().distinct()
+                        .map(productId -> found.getOrDefault(productId, new ReviewStatistics(productId, 0, 0, null)))));
     }
 
     @Override
     public Mono<Void> deleteReviews(int productId) {
         LOG.debug("deleteReviews: tries to delete reviews for the product with  productId: {}", productId);
-      return Mono.fromRunnable(() -> ReviewInternalRequestHandler.internalDeleteReview(productId,repository));
+        return tracer.trace("deleteReviews", productId, persistence.deleteReviews(productId))
+                .doOnNext(count -> LOG.debug("deleteReviews: deleted {} reviews for the product with productId: {}", count, productId))
+                .then();
+    }
 
+    private Review setServiceAddress(Review review) {
+        review.setServiceAddress(serviceUtil.getServiceAddress());
+        return review;
     }
 }
@@ -0,0 +1,21 @@
+-- The schema of an empty database. A database created by Hibernate before the migrations were added already has the
+-- reviews table, it only gets the review_summary table, see spring.flyway.baseline-version
+CREATE TABLE IF NOT EXISTS reviews (
+    id         INT          NOT NULL AUTO_INCREMENT,
+    version    INT          NOT NULL,
+    product_id INT          NOT NULL,
+    review_id  INT          NOT NULL,
+    author     VARCHAR(255),
+    subject    VARCHAR(255),
+    content    VARCHAR(255),
+    PRIMARY KEY (id),
+    UNIQUE INDEX reviews_unique_idx (product_id, review_id)
+);
+
+CREATE TABLE IF NOT EXISTS review_summary (
+    product_id       INT         NOT NULL,
+    review_count     INT         NOT NULL,
+    latest_review_id INT         NOT NULL,
+    last_updated     DATETIME(6) NOT NULL,
+    PRIMARY KEY (product_id)
+);
@@ -0,0 +1,6 @@
+-- A reviews table created by Hibernate got its ids from a sequence table, both JPA and R2DBC now let MySQL
+-- generate them. AUTO_INCREMENT continues after the highest id
+ALTER TABLE reviews MODIFY id INT NOT NULL AUTO_INCREMENT;
+
+DROP TABLE IF EXISTS reviews_seq;
+DROP TABLE IF EXISTS hibernate_sequence;
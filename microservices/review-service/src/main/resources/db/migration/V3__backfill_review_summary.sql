@@ -0,0 +1,3 @@
+-- Summaries of the products whose reviews were stored before the summaries were kept
+INSERT IGNORE INTO review_summary (product_id, review_count, latest_review_id, last_updated)
+SELECT product_id, COUNT(*), MAX(review_id), UTC_TIMESTAMP(6) FROM reviews GROUP BY product_id;
@@ -2,6 +2,7 @@ package com.pacifique.microservices.core.review;
 
 import com.pacifique.microservices.api.core.review.Review;
 import com.pacifique.microservices.core.review.persistance.ReviewEntity;
+import com.pacifique.microservices.core.review.persistance.ReviewR2dbcEntity;
 import com.pacifique.microservices.core.review.services.ReviewMapper;
 import org.junit.jupiter.api.Test;
 import org.mapstruct.factory.Mappers;
@@ -11,6 +12,7 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 public class MapperTest {
     private ReviewMapper mapper = Mappers.getMapper(ReviewMapper.class);
@@ -63,4 +65,23 @@ public class MapperTest {
         assertEquals(api.getSubject(),api2.getSubject());
         assertNotNull(api.getServiceAddress());
     }
+
+    @Test
+    void r2dbcMapperTests(){
+        Review api = new Review(1, 2, "a", "s", "C", "adr");
+        ReviewR2dbcEntity entity = mapper.apiToR2dbcEntity(api);
+
+        assertEquals(api.getProductId(),entity.getProductId());
+        assertEquals(api.getReviewId(),entity.getReviewId());
+        assertNull(entity.getId());
+
+        Review api2 = mapper.r2dbcEntityToApi(entity);
+
+        assertEquals(api.getProductId(),api2.getProductId());
+        assertEquals(api.getReviewId(),api2.getReviewId());
+        assertEquals(api.getAuthor(),api2.getAuthor());
+        assertEquals(api.getSubject(),api2.getSubject());
+        assertEquals(api.getContent(),api2.getContent());
+        assertNull(api2.getServiceAddress());
+    }
 }
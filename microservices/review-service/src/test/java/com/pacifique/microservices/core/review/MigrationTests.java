@@ -0,0 +1,91 @@
+package com.pacifique.microservices.core.review;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.ClassPathResource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The Flyway migrations, with the baseline settings of application.yml, applied to a database created by Hibernate
+ * before the migrations were added: a reviews table with ids from the reviews_seq table, and no review_summary table.
+ */
+class MigrationTests extends MySqlTestBase {
+
+    private static final String DATABASE = "review_db_before_migrations";
+
+    @Test
+    void migratesDatabaseCreatedBeforeMigrations() throws SQLException {
+        String url = "jdbc:mysql://" + database.getHost() + ":" + database.getFirstMappedPort() + "/";
+        try (Connection connection = DriverManager.getConnection(url, "root", database.getPassword());
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP DATABASE IF EXISTS " + DATABASE);
+            statement.execute("CREATE DATABASE " + DATABASE);
+        }
+        url += DATABASE;
+
+        try (Connection connection = DriverManager.getConnection(url, "root", database.getPassword());
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE reviews (id INT NOT NULL, version INT NOT NULL, product_id INT NOT NULL, "
+                    + "review_id INT NOT NULL, author VARCHAR(255), subject VARCHAR(255), content VARCHAR(255), "
+                    + "PRIMARY KEY (id), UNIQUE INDEX reviews_unique_idx (product_id, review_id))");
+            statement.execute("CREATE TABLE reviews_seq (next_val BIGINT)");
+            statement.execute("INSERT INTO reviews_seq VALUES (101)");
+            statement.execute("INSERT INTO reviews VALUES (1, 0, 1, 1, 'a', 's', 'c'), (2, 0, 1, 3, 'a', 's', 'c'), "
+                    + "(3, 0, 2, 1, 'a', 's', 'c')");
+        }
+
+        Properties application = applicationProperties();
+        Flyway.configure()
+                .dataSource(url, "root", database.getPassword())
+                .baselineOnMigrate(Boolean.parseBoolean(application.getProperty("spring.flyway.baseline-on-migrate")))
+                .baselineVersion(application.getProperty("spring.flyway.baseline-version"))
+                .load()
+                .migrate();
+
+        try (Connection connection = DriverManager.getConnection(url, "root", database.getPassword());
+             Statement statement = connection.createStatement()) {
+            // The summaries of the reviews stored before the migrations
+            try (ResultSet summaries = statement.executeQuery(
+                    "SELECT product_id, review_count, latest_review_id FROM review_summary ORDER BY product_id")) {
+                assertTrue(summaries.next());
+                assertEquals(1, summaries.getInt("product_id"));
+                assertEquals(2, summaries.getInt("review_count"));
+                assertEquals(3, summaries.getInt("latest_review_id"));
+                assertTrue(summaries.next());
+                assertEquals(2, summaries.getInt("product_id"));
+                assertEquals(1, summaries.getInt("review_count"));
+                assertEquals(1, summaries.getInt("latest_review_id"));
+                assertFalse(summaries.next());
+            }
+
+            // MySQL generates the ids, after the highest existing one
+            statement.executeUpdate("INSERT INTO reviews (version, product_id, review_id, author, subject, content) "
+                    + "VALUES (0, 2, 2, 'a', 's', 'c')", Statement.RETURN_GENERATED_KEYS);
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                assertTrue(keys.next());
+                assertEquals(4, keys.getInt(1));
+            }
+
+            try (ResultSet tables = connection.getMetaData().getTables(DATABASE, null, "reviews_seq", null)) {
+                assertFalse(tables.next());
+            }
+        }
+    }
+
+    private static Properties applicationProperties() {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new ClassPathResource("application.yml"));
+        return yaml.getObject();
+    }
+}
@@ -7,7 +7,7 @@ import org.testcontainers.containers.MySQLContainer;
 
 public class MySqlTestBase {
     // Extend startup timeout since a MySQLContainer with MySQL 8 starts very slow on Win10/WSL2
-    private static JdbcDatabaseContainer database = new MySQLContainer("mysql:8.0.32").withStartupTimeoutSeconds(300);
+    protected static JdbcDatabaseContainer database = new MySQLContainer("mysql:8.0.32").withStartupTimeoutSeconds(300);
 
     static {
         database.start();
@@ -18,5 +18,11 @@ public class MySqlTestBase {
         registry.add("spring.datasource.url", database::getJdbcUrl);
         registry.add("spring.datasource.username", database::getUsername);
         registry.add("spring.datasource.password", database::getPassword);
+        registry.add("spring.r2dbc.url", () -> "r2dbc:mysql://" + database.getHost() + ":" + database.getFirstMappedPort() + "/" + database.getDatabaseName());
+        registry.add("spring.r2dbc.username", database::getUsername);
+        registry.add("spring.r2dbc.password", database::getPassword);
+        registry.add("spring.flyway.url", database::getJdbcUrl);
+        registry.add("spring.flyway.user", database::getUsername);
+        registry.add("spring.flyway.password", database::getPassword);
     }
 }
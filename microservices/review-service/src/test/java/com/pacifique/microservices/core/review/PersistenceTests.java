@@ -65,6 +65,18 @@ public class PersistenceTests extends MySqlTestBase{
         assertFalse(repository.existsById(savedEntity.getId()));
     }
 
+    @Test
+    void deleteByProductId(){
+        repository.save(ReviewEntity.builder().productId(1).reviewId(3).author("a").subject("s").content("c").build());
+        repository.save(ReviewEntity.builder().productId(2).reviewId(1).author("a").subject("s").content("c").build());
+
+        assertEquals(2, repository.deleteByProductId(1));
+        assertThat(repository.findByProductId(1), hasSize(0));
+        assertEquals(1, repository.count());
+
+        assertEquals(0, repository.deleteByProductId(1));
+    }
+
     @Test
     void getByProductId(){
         List<ReviewEntity> entityList = repository.findByProductId(savedEntity.getProductId());
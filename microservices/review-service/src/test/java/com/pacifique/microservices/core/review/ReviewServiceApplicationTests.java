@@ -1,23 +1,38 @@
 package com.pacifique.microservices.core.review;
 
 import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.core.review.ReviewPage;
 import com.pacifique.microservices.api.event‎.Event;
 import com.pacifique.microservices.api.exceptions.InvalidInputException;
 import com.pacifique.microservices.core.review.persistance.ReviewRepository;
+import com.pacifique.microservices.core.review.persistance.ReviewSummaryRepository;
+import com.pacifique.microservices.util.messaging.ProcessedEvents;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpStatus;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.function.Consumer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.pacifique.microservices.api.event‎.Event.Type.CREATE;
 import static com.pacifique.microservices.api.event‎.Event.Type.DELETE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
@@ -27,20 +42,27 @@ import static org.springframework.http.MediaType.APPLICATION_JSON;
         "logging.level.com.pacifique=DEBUG",
         "eureka.client.enabled=false"
 })
+@Import({TestChannelBinderConfiguration.class})
 class ReviewServiceApplicationTests extends MySqlTestBase {
 
     @Autowired
     private WebTestClient client;
     @Autowired
     private ReviewRepository repository;
+    @Autowired
+    private ReviewSummaryRepository summaryRepository;
+    @Autowired
+    private OutputDestination target;
 
     @Autowired
     @Qualifier("messageProcessor")
-    private Consumer<Event<Integer, Review>> messageProcessor;
+    private Function<Flux<Message<Event<Integer, Review>>>, Mono<Void>> messageProcessor;
 
     @BeforeEach
     void setupDb() {
         repository.deleteAll();
+        summaryRepository.deleteAll();
+        target.clear();
     }
 
     @Test
@@ -60,6 +82,88 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
                 .jsonPath("$[2].reviewId").isEqualTo(3);
     }
 
+    @Test
+    void getReviewsByProductIds() {
+        sendCreateReviewEvent(1, 1);
+        sendCreateReviewEvent(1, 2);
+        sendCreateReviewEvent(2, 1);
+        sendCreateReviewEvent(3, 1);
+
+        getAndVerifyReviewsByProductId("?productIds=1,2", OK)
+                .jsonPath("$.length()").isEqualTo(3);
+    }
+
+    @Test
+    void getReviewsTooManyProductIds() {
+        String productIds = IntStream.rangeClosed(1, 201).mapToObj(Integer::toString).collect(Collectors.joining(","));
+
+        getAndVerifyReviewsByProductId("?productIds=" + productIds, UNPROCESSABLE_ENTITY)
+                .jsonPath("$.message").isEqualTo("Too many product ids: 201, max is: 200");
+        getAndVerifyReviewStatistics("?productIds=" + productIds, UNPROCESSABLE_ENTITY)
+                .jsonPath("$.message").isEqualTo("Too many product ids: 201, max is: 200");
+    }
+
+    @Test
+    void getReviewPages() {
+        int productId = 1;
+        for (int reviewId = 1; reviewId <= 5; reviewId++) {
+            sendCreateReviewEvent(productId, reviewId);
+        }
+        sendCreateReviewEvent(2, 1);
+
+        List<Integer> reviewIds = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ReviewPage page = getReviewPage(productId, 2, cursor);
+            page.getReviews().forEach(r -> reviewIds.add(r.getReviewId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(List.of(1, 2, 3, 4, 5), reviewIds);
+    }
+
+    @Test
+    void getReviewStatistics() {
+        sendCreateReviewEvent(1, 1);
+        sendCreateReviewEvent(1, 3);
+        sendCreateReviewEvent(1, 2);
+        messageProcessor.apply(messages(createReviewEvent(2, 1), createReviewEvent(2, 2))).block();
+
+        getAndVerifyReviewStatistics("?productId=1", OK)
+                .jsonPath("$.productId").isEqualTo(1)
+                .jsonPath("$.count").isEqualTo(3)
+                .jsonPath("$.latestReviewId").isEqualTo(3)
+                .jsonPath("$.lastUpdated").isNotEmpty();
+
+        getAndVerifyReviewStatistics("?productIds=1,2,3", OK)
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[1].count").isEqualTo(2)
+                .jsonPath("$[2].productId").isEqualTo(3)
+                .jsonPath("$[2].count").isEqualTo(0);
+
+        // A duplicate is not stored and not counted
+        sendCreateReviewEvent(1, 1);
+        getAndVerifyReviewStatistics("?productId=1", OK)
+                .jsonPath("$.count").isEqualTo(3);
+
+        sendDeleteReviewEvent(1);
+        getAndVerifyReviewStatistics("?productId=1", OK)
+                .jsonPath("$.count").isEqualTo(0)
+                .jsonPath("$.latestReviewId").isEqualTo(0);
+    }
+
+    @Test
+    void getReviewPageInvalidCursor() {
+        getAndVerifyReviewsByProductId("?productId=1&limit=2&cursor=invalid", UNPROCESSABLE_ENTITY)
+                .jsonPath("$.message").isEqualTo("Invalid cursor: invalid for productId: 1");
+
+        getAndVerifyReviewsByProductId("?productId=1&limit=0", UNPROCESSABLE_ENTITY)
+                .jsonPath("$.message").isEqualTo("Invalid limit: 0, must be between 1 and 1000");
+    }
+
     @Test
     void duplicateError() {
         int productId = 1;
@@ -69,16 +173,31 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
         sendCreateReviewEvent(productId, reviewId);
         assertEquals(1, repository.count());
 
-        InvalidInputException thrown = assertThrows(InvalidInputException.class, () -> sendCreateReviewEvent(productId, reviewId),
-                "Expected a InvalidInputException here!");
-
-        assertEquals("Duplicate key, Product Id: 1, Review Id:1", thrown.getMessage());
+        // The duplicate is dead lettered instead of failing the stream of events
+        sendCreateReviewEvent(productId, reviewId);
 
         assertEquals(1, repository.count());
-
+        Message<byte[]> deadLetter = target.receive(0, "DLX");
+        assertNotNull(deadLetter);
+        assertEquals(InvalidInputException.class.getName(), deadLetter.getHeaders().get(ProcessedEvents.EXCEPTION_TYPE_HEADER));
+        assertNull(target.receive(0, "DLX"));
     }
 
 
+    @Test
+    void processBatchOfEvents() {
+        messageProcessor.apply(messages(
+                createReviewEvent(1, 1),
+                createReviewEvent(1, 2),
+                createReviewEvent(1, 1),
+                createReviewEvent(1, 3),
+                createReviewEvent(2, 1))).block();
+
+        // The duplicate is dead lettered and the other reviews of the batch are stored
+        assertEquals(4, repository.count());
+        assertEquals(3, repository.findByProductId(1).size());
+    }
+
     @Test
     void deleteReviews() {
         int productId = 1;
@@ -139,14 +258,40 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
     }
 
 
+    private WebTestClient.BodyContentSpec getAndVerifyReviewStatistics(String productQuery, HttpStatus expectedStatus) {
+        return client.get().uri("/review/statistics" + productQuery)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(expectedStatus)
+                .expectHeader().contentType(APPLICATION_JSON)
+                .expectBody();
+    }
+
+    private ReviewPage getReviewPage(int productId, int limit, String cursor) {
+        return client.get().uri("/review?productId=" + productId + "&limit=" + limit + (cursor == null ? "" : "&cursor=" + cursor))
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ReviewPage.class)
+                .returnResult().getResponseBody();
+    }
+
     private void sendCreateReviewEvent(int productId, int reviewId) {
+        messageProcessor.apply(messages(createReviewEvent(productId, reviewId))).block();
+    }
+
+    private Event<Integer, Review> createReviewEvent(int productId, int reviewId) {
         Review review = new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
-        Event<Integer, Review> event = new Event<>(review, productId, CREATE);
-        messageProcessor.accept(event);
+        return new Event<>(review, productId, CREATE);
     }
 
     private void sendDeleteReviewEvent(int productId) {
         Event<Integer, Review> event = new Event<>(null, productId, DELETE);
-        messageProcessor.accept(event);
+        messageProcessor.apply(messages(event)).block();
+    }
+
+    @SafeVarargs
+    private static Flux<Message<Event<Integer, Review>>> messages(Event<Integer, Review>... events) {
+        return Flux.just(events).map(event -> MessageBuilder.withPayload(event).build());
     }
 }
@@ -0,0 +1,174 @@
+package com.pacifique.microservices.core.review;
+
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.event‎.Event;
+import com.pacifique.microservices.api.exceptions.InvalidInputException;
+import com.pacifique.microservices.core.review.persistance.ReviewR2dbcRepository;
+import com.pacifique.microservices.util.messaging.ProcessedEvents;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+import static com.pacifique.microservices.api.event‎.Event.Type.CREATE;
+import static com.pacifique.microservices.api.event‎.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+        "spring.cloud.stream.defaultBinder=rabbit",
+        "logging.level.com.pacifique=DEBUG",
+        "eureka.client.enabled=false"
+})
+@ActiveProfiles("r2dbc")
+@Import({TestChannelBinderConfiguration.class})
+class ReviewServiceR2dbcTests extends MySqlTestBase {
+
+    @Autowired
+    private WebTestClient client;
+    @Autowired
+    private ReviewR2dbcRepository repository;
+    @Autowired
+    private DatabaseClient databaseClient;
+    @Autowired
+    private OutputDestination target;
+
+    @Autowired
+    @Qualifier("messageProcessor")
+    private Function<Flux<Message<Event<Integer, Review>>>, Mono<Void>> messageProcessor;
+
+    @BeforeEach
+    void setupDb() {
+        repository.deleteAll().block();
+        databaseClient.sql("DELETE FROM review_summary").then().block();
+        target.clear();
+    }
+
+    @Test
+    void getReviewsByProductId() {
+        int productId = 1;
+
+        sendCreateReviewEvent(productId, 1);
+        sendCreateReviewEvent(productId, 2);
+        sendCreateReviewEvent(productId, 3);
+
+        assertEquals(3, repository.findByProductId(productId).count().block());
+
+        getReviews("?productId=" + productId)
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[2].productId").isEqualTo(productId)
+                .jsonPath("$[2].reviewId").isEqualTo(3);
+    }
+
+    @Test
+    void getReviewsByProductIds() {
+        sendCreateReviewEvent(1, 1);
+        sendCreateReviewEvent(1, 2);
+        sendCreateReviewEvent(2, 1);
+        sendCreateReviewEvent(3, 1);
+
+        getReviews("?productIds=1,2")
+                .jsonPath("$.length()").isEqualTo(3);
+    }
+
+    @Test
+    void duplicateError() {
+        sendCreateReviewEvent(1, 1);
+        assertEquals(1, repository.count().block());
+
+        // The duplicate is dead lettered instead of failing the stream of events
+        sendCreateReviewEvent(1, 1);
+        assertEquals(1, repository.count().block());
+        Message<byte[]> deadLetter = target.receive(0, "DLX");
+        assertNotNull(deadLetter);
+        assertEquals(InvalidInputException.class.getName(), deadLetter.getHeaders().get(ProcessedEvents.EXCEPTION_TYPE_HEADER));
+        assertNull(target.receive(0, "DLX"));
+    }
+
+    @Test
+    void processBatchOfEvents() {
+        messageProcessor.apply(messages(
+                createReviewEvent(1, 1),
+                createReviewEvent(1, 2),
+                createReviewEvent(1, 1),
+                createReviewEvent(1, 3),
+                createReviewEvent(2, 1))).block();
+
+        // The failed transaction is rolled back, the duplicate is dead lettered and the other reviews are stored
+        assertEquals(4, repository.count().block());
+        assertEquals(3, repository.findByProductId(1).count().block());
+    }
+
+    @Test
+    void deleteReviews() {
+        sendCreateReviewEvent(1, 1);
+        sendCreateReviewEvent(1, 2);
+        sendCreateReviewEvent(2, 1);
+
+        sendDeleteReviewEvent(1);
+        assertEquals(0, repository.findByProductId(1).count().block());
+        assertEquals(1, repository.count().block());
+
+        sendDeleteReviewEvent(1);
+    }
+
+    @Test
+    void getReviewStatistics() {
+        messageProcessor.apply(messages(createReviewEvent(1, 1), createReviewEvent(1, 2), createReviewEvent(2, 1))).block();
+        sendCreateReviewEvent(1, 3);
+
+        getReviews("/statistics?productIds=1,2")
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].count").isEqualTo(3)
+                .jsonPath("$[0].latestReviewId").isEqualTo(3)
+                .jsonPath("$[1].count").isEqualTo(1);
+
+        sendDeleteReviewEvent(1);
+        getReviews("/statistics?productId=1")
+                .jsonPath("$.count").isEqualTo(0);
+    }
+
+    private WebTestClient.BodyContentSpec getReviews(String productQuery) {
+        return client.get().uri("/review" + productQuery)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(APPLICATION_JSON)
+                .expectBody();
+    }
+
+    private void sendCreateReviewEvent(int productId, int reviewId) {
+        messageProcessor.apply(messages(createReviewEvent(productId, reviewId))).block();
+    }
+
+    private Event<Integer, Review> createReviewEvent(int productId, int reviewId) {
+        Review review = new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
+        return new Event<>(review, productId, CREATE);
+    }
+
+    private void sendDeleteReviewEvent(int productId) {
+        Event<Integer, Review> event = new Event<>(null, productId, DELETE);
+        messageProcessor.apply(messages(event)).block();
+    }
+
+    @SafeVarargs
+    private static Flux<Message<Event<Integer, Review>>> messages(Event<Integer, Review>... events) {
+        return Flux.just(events).map(event -> MessageBuilder.withPayload(event).build());
+    }
+}
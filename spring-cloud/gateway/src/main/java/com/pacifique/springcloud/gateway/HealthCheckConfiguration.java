@@ -15,8 +15,6 @@ import reactor.core.publisher.Mono;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
-import static java.util.logging.Level.FINE;
-
 @Configuration
 public class HealthCheckConfiguration {
     private static final Logger LOG = LoggerFactory.getLogger(HealthCheckConfiguration.class);
@@ -46,7 +44,9 @@ public class HealthCheckConfiguration {
         LOG.debug("Setting up a call to the Health API on URL: {}", url);
         return webClient.get().uri(url).retrieve().bodyToMono(String.class)
                 .map(s -> new Health.Builder().up().build())
-                .onErrorResume(ex -> Mono.just(new Health.Builder().down(ex).build()))
-                .log(LOG.getName(), FINE);
+                .onErrorResume(ex -> {
+                    LOG.debug("The Health API on URL {} failed: {}", url, ex.toString());
+                    return Mono.just(new Health.Builder().down(ex).build());
+                });
     }
 }
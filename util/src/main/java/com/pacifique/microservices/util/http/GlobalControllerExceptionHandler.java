@@ -3,6 +3,7 @@ package com.pacifique.microservices.util.http;
 import com.pacifique.microservices.api.exceptions.BadRequestException;
 import com.pacifique.microservices.api.exceptions.InvalidInputException;
 import com.pacifique.microservices.api.exceptions.NotFoundException;
+import com.pacifique.microservices.api.exceptions.ServiceUnavailableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -42,6 +43,14 @@ public class GlobalControllerExceptionHandler {
         return createHttpErrorInfo(UNPROCESSABLE_ENTITY, request, ex);
     }
 
+    @ResponseStatus(SERVICE_UNAVAILABLE)
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public @ResponseBody HttpErrorInfo handleServiceUnavailableException(
+            ServerHttpRequest request, ServiceUnavailableException ex) {
+
+        return createHttpErrorInfo(SERVICE_UNAVAILABLE, request, ex);
+    }
+
     private HttpErrorInfo createHttpErrorInfo(
             HttpStatus httpStatus, ServerHttpRequest request, Exception ex) {
 
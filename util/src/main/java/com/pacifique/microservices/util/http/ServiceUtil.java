@@ -1,5 +1,6 @@
 package com.pacifique.microservices.util.http;
 
+import com.pacifique.microservices.api.exceptions.InvalidInputException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,6 +9,7 @@ import org.springframework.stereotype.Component;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Collection;
 
 @Component
 public class ServiceUtil {
@@ -20,6 +22,15 @@ public class ServiceUtil {
         this.port = port;
     }
 
+    /**
+     * Rejects a request for more products than app.maxBatchSize.
+     */
+    public static void checkBatchSize(Collection<Integer> productIds, int maxBatchSize) {
+        if (productIds.size() > maxBatchSize) {
+            throw new InvalidInputException("Too many product ids: " + productIds.size() + ", max is: " + maxBatchSize);
+        }
+    }
+
     public String getServiceAddress() {
         if (serviceAddress == null) {
             serviceAddress = findMyHostName() +"/" + findMyIpAddress() +":"+port;
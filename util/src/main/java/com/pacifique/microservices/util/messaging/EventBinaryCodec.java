@@ -0,0 +1,251 @@
+package com.pacifique.microservices.util.messaging;
+
+import com.pacifique.microservices.api.core.product.Product;
+import com.pacifique.microservices.api.core.recommendation.Recommendation;
+import com.pacifique.microservices.api.core.review.Review;
+import com.pacifique.microservices.api.event‎.Event;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding of the events on the message bus, with Product, Recommendation or Review data.
+ *
+ * The fields are written in a fixed order per data type, so no field names are sent. Ints are written as
+ * zigzag varints and strings as their UTF-8 length followed by their bytes. An encoded event starts with
+ * a magic byte that can't start a JSON document, so binary and JSON events can be told apart.
+ *
+ * Layout of version 1:
+ * magic, version, event type, flags, [key], [created at: epoch seconds, nanos, offset seconds], data type, data fields
+ */
+public final class EventBinaryCodec {
+
+    public static final String MIME_TYPE_VALUE = "application/x-event-binary";
+    public static final MimeType MIME_TYPE = MimeType.valueOf(MIME_TYPE_VALUE);
+
+    private static final byte MAGIC = (byte) 0xEB;
+    private static final byte VERSION = 1;
+
+    private static final int KEY_PRESENT = 1;
+    private static final int CREATED_AT_PRESENT = 2;
+
+    private static final byte NO_DATA = 0;
+    private static final byte PRODUCT = 1;
+    private static final byte RECOMMENDATION = 2;
+    private static final byte REVIEW = 3;
+
+    private static final Event.Type[] EVENT_TYPES = Event.Type.values();
+
+    private EventBinaryCodec() {
+    }
+
+    /**
+     * @return true if the bytes are a binary encoded event, e.g. false for a JSON event
+     */
+    public static boolean isBinary(byte[] bytes) {
+        return bytes.length >= 2 && bytes[0] == MAGIC;
+    }
+
+    public static byte[] encode(Event<Integer, ?> event) {
+        Output out = new Output(64);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(event.getEventType() == null ? 0 : event.getEventType().ordinal() + 1);
+
+        ZonedDateTime createdAt = event.getEventCreatedAt();
+        out.writeByte((event.getKey() != null ? KEY_PRESENT : 0) | (createdAt != null ? CREATED_AT_PRESENT : 0));
+        if (event.getKey() != null) {
+            out.writeInt(event.getKey());
+        }
+        if (createdAt != null) {
+            out.writeLong(createdAt.toEpochSecond());
+            out.writeInt(createdAt.getNano());
+            out.writeInt(createdAt.getOffset().getTotalSeconds());
+        }
+
+        Object data = event.getData();
+        if (data == null) {
+            out.writeByte(NO_DATA);
+        } else if (data instanceof Product product) {
+            out.writeByte(PRODUCT);
+            out.writeInt(product.getProductId());
+            out.writeString(product.getName());
+            out.writeInt(product.getWeight());
+            out.writeString(product.getServiceAddress());
+        } else if (data instanceof Recommendation recommendation) {
+            out.writeByte(RECOMMENDATION);
+            out.writeInt(recommendation.getProductId());
+            out.writeInt(recommendation.getRecommendationId());
+            out.writeString(recommendation.getAuthor());
+            out.writeInt(recommendation.getRate());
+            out.writeString(recommendation.getContent());
+            out.writeString(recommendation.getServiceAddress());
+        } else if (data instanceof Review review) {
+            out.writeByte(REVIEW);
+            out.writeInt(review.getProductId());
+            out.writeInt(review.getReviewId());
+            out.writeString(review.getAuthor());
+            out.writeString(review.getSubject());
+            out.writeString(review.getContent());
+            out.writeString(review.getServiceAddress());
+        } else {
+            throw new IllegalArgumentException("Can't encode event data of type: " + data.getClass().getName());
+        }
+        return out.toByteArray();
+    }
+
+    public static Event<Integer, Object> decode(byte[] bytes) {
+        if (!isBinary(bytes)) {
+            throw new IllegalArgumentException("Not a binary encoded event");
+        }
+        Input in = new Input(bytes, 1);
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary event version: " + version);
+        }
+        int eventType = in.readByte();
+        if (eventType > EVENT_TYPES.length) {
+            throw new IllegalArgumentException("Unknown event type: " + eventType);
+        }
+
+        int flags = in.readByte();
+        Integer key = (flags & KEY_PRESENT) != 0 ? in.readInt() : null;
+        ZonedDateTime createdAt = null;
+        if ((flags & CREATED_AT_PRESENT) != 0) {
+            Instant instant = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            createdAt = ZonedDateTime.ofInstant(instant, ZoneOffset.ofTotalSeconds(in.readInt()));
+        }
+
+        Object data;
+        int dataType = in.readByte();
+        switch (dataType) {
+            case NO_DATA:
+                data = null;
+                break;
+            case PRODUCT:
+                data = new Product(in.readInt(), in.readString(), in.readInt(), in.readString());
+                break;
+            case RECOMMENDATION:
+                data = new Recommendation(in.readInt(), in.readInt(), in.readString(), in.readInt(), in.readString(), in.readString());
+                break;
+            case REVIEW:
+                data = new Review(in.readInt(), in.readInt(), in.readString(), in.readString(), in.readString(), in.readString());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event data type: " + dataType);
+        }
+        return new Event<>(data, key, eventType == 0 ? null : EVENT_TYPES[eventType - 1], createdAt);
+    }
+
+    private static final class Output {
+        private byte[] buffer;
+        private int size;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            writeVarLong(Integer.toUnsignedLong((value << 1) ^ (value >> 31)));
+        }
+
+        void writeLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Writes the length + 1 before the bytes, so 0 stands for null.
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int readByte() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("Truncated binary event");
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        int readInt() {
+            long value = readVarLong();
+            return (int) (value >>> 1) ^ -(int) (value & 1);
+        }
+
+        long readLong() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() {
+            long length = readVarLong() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > buffer.length - position) {
+                throw new IllegalArgumentException("Truncated binary event");
+            }
+            String value = new String(buffer, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in binary event");
+        }
+    }
+}
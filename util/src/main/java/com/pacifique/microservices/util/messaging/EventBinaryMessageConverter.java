@@ -0,0 +1,42 @@
+package com.pacifique.microservices.util.messaging;
+
+import com.pacifique.microservices.api.event‎.Event;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.stereotype.Component;
+
+/**
+ * Converts the events of messages with the {@link EventBinaryCodec#MIME_TYPE} content type.
+ *
+ * The converter is only used for messages with that content type, messages with a JSON content type,
+ * e.g. the ones sent before the binary encoding was enabled, are still converted from JSON.
+ */
+@Component
+public class EventBinaryMessageConverter extends AbstractMessageConverter {
+
+    public EventBinaryMessageConverter() {
+        super(EventBinaryCodec.MIME_TYPE);
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Event.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        Object payload = message.getPayload();
+        if (payload instanceof byte[] bytes && EventBinaryCodec.isBinary(bytes)) {
+            return EventBinaryCodec.decode(bytes);
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        return EventBinaryCodec.encode((Event<Integer, ?>) payload);
+    }
+}
@@ -0,0 +1,93 @@
+package com.pacifique.microservices.util.messaging;
+
+import com.pacifique.microservices.api.event‎.Event;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lag and processing time of the events consumed from one destination, tagged with the destination,
+ * the partition and the event type.
+ *
+ * The lag is the time from when the publisher created the event, see Event.getEventCreatedAt, until it is consumed.
+ * It includes the time in the publisher's outbox and on the broker, and any clock skew between the hosts.
+ * The processing time is the time from when the message was received, its timestamp header, until the event is
+ * stored or dead lettered, including the time it waits for its lane and batch.
+ */
+public class EventMetrics {
+
+    public static final String CONSUME_LAG = "event.consume.lag";
+    public static final String PROCESSING = "event.processing";
+
+    static final String KAFKA_PARTITION_HEADER = "kafka_receivedPartitionId";
+    static final String RABBIT_QUEUE_HEADER = "amqp_consumerQueue";
+
+    private final String destination;
+    private final Meter.MeterProvider<Timer> consumeLag;
+    private final Meter.MeterProvider<Timer> processing;
+
+    public EventMetrics(MeterRegistry meterRegistry, String destination) {
+        this.destination = destination;
+        this.consumeLag = Timer.builder(CONSUME_LAG)
+                .description("Time from when an event was created by the publisher until it was consumed")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        this.processing = Timer.builder(PROCESSING)
+                .description("Time from when an event was received until it was processed")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+    }
+
+    public void recordConsumed(Message<? extends Event<?, ?>> message) {
+        Event<?, ?> event = message.getPayload();
+        if (event.getEventCreatedAt() == null) {
+            return;
+        }
+        // Negative with clock skew between the hosts
+        long lagMillis = Math.max(0, System.currentTimeMillis() - event.getEventCreatedAt().toInstant().toEpochMilli());
+        consumeLag.withTags(tags(message)).record(lagMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param deadLettered true if the event failed and was sent to the dead-letter destination
+     */
+    public void recordProcessed(Message<? extends Event<?, ?>> message, boolean deadLettered) {
+        Long receivedAt = message.getHeaders().getTimestamp();
+        if (receivedAt == null) {
+            return;
+        }
+        processing.withTags(tags(message).and("outcome", deadLettered ? "DEAD_LETTERED" : "PROCESSED"))
+                .record(Math.max(0, System.currentTimeMillis() - receivedAt), TimeUnit.MILLISECONDS);
+    }
+
+    private Tags tags(Message<? extends Event<?, ?>> message) {
+        return Tags.of(
+                "destination", destination,
+                "partition", partition(message.getHeaders()),
+                "eventType", String.valueOf(message.getPayload().getEventType()));
+    }
+
+    /**
+     * The partition from Kafka, or the index at the end of a partitioned RabbitMQ queue, e.g. 1 for products.productsGroup-1.
+     */
+    static String partition(MessageHeaders headers) {
+        Object kafkaPartition = headers.get(KAFKA_PARTITION_HEADER);
+        if (kafkaPartition != null) {
+            return kafkaPartition.toString();
+        }
+        Object queue = headers.get(RABBIT_QUEUE_HEADER);
+        if (queue != null) {
+            String name = queue.toString();
+            String suffix = name.substring(name.lastIndexOf('-') + 1);
+            if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+                return suffix;
+            }
+        }
+        return "none";
+    }
+}
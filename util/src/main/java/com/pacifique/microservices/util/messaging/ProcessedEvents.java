@@ -0,0 +1,159 @@
+package com.pacifique.microservices.util.messaging;
+
+import com.pacifique.microservices.api.event‎.Event;
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Settles the events consumed by a reactive message processor once they are stored or dead lettered.
+ *
+ * A stored event is published to the accepted-events destination, where the composite learns that the change is
+ * applied, e.g. to invalidate its cached aggregate of the product. A rejected event, e.g. a duplicate create, is
+ * only published to the dead-letter destination.
+ *
+ * A reactive function gets the messages as they arrive, so the binder can't ack a message after its event is
+ * processed. With acknowledgeMode = MANUAL on a RabbitMQ consumer binding, the message is acked here once its event
+ * is stored or dead lettered. The lanes of a processor finish on the publish threads, so the acks of one channel are
+ * serialized on the channel, a channel is not meant to be used by several threads at once. Each message is acked on
+ * its own, not with multiple = true, so acks in another order than the deliveries are fine. The unacked messages, at most the prefetch of the consumer, are redelivered when the
+ * instance stops or crashes. When an event can't be dead lettered either, its message is requeued to be redelivered.
+ * A redelivered create event that was stored before the crash is dead lettered as a duplicate.
+ *
+ * The Kafka binder commits the offset of a record when it is handed to the function. The events waiting in the lanes
+ * and batches of a processor, at most concurrency x batchSize events, are lost when the instance crashes, and an
+ * event that can't be dead lettered is logged and dropped.
+ *
+ * The accepted-events and dead-letter destinations are written with StreamBridge, which blocks on the broker, so
+ * they are written on the scheduler.
+ */
+public class ProcessedEvents {
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessedEvents.class);
+
+    public static final String ACCEPTED_EVENTS_BINDING = "acceptedEvents-out-0";
+    public static final String DEAD_LETTERS_BINDING = "deadLetters-out-0";
+    public static final String EXCEPTION_MESSAGE_HEADER = "x-exception-message";
+    public static final String EXCEPTION_TYPE_HEADER = "x-exception-type";
+
+    static final String RABBIT_CHANNEL_HEADER = "amqp_channel";
+    static final String RABBIT_DELIVERY_TAG_HEADER = "amqp_deliveryTag";
+
+    private final StreamBridge streamBridge;
+    private final Scheduler scheduler;
+    private final EventMetrics eventMetrics;
+
+    public ProcessedEvents(StreamBridge streamBridge, Scheduler scheduler, EventMetrics eventMetrics) {
+        this.streamBridge = streamBridge;
+        this.scheduler = scheduler;
+        this.eventMetrics = eventMetrics;
+    }
+
+    /**
+     * Publishes the stored events to the accepted-events destination and acks their messages. Never fails, an
+     * accepted event that can't be published is logged, the composite's cached aggregate then expires on its own.
+     */
+    public Mono<Void> stored(List<? extends Message<? extends Event<?, ?>>> messages) {
+        if (messages.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> messages.forEach(message -> publishAccepted(message.getPayload())))
+                .subscribeOn(scheduler)
+                .then(Mono.fromRunnable(() -> messages.forEach(message -> {
+                    eventMetrics.recordProcessed(message, false);
+                    ack(message);
+                })));
+    }
+
+    public Mono<Void> stored(Message<? extends Event<?, ?>> message) {
+        return stored(List.of(message));
+    }
+
+    /**
+     * Publishes the event to the dead-letter destination, with the exception in the x-exception-type and
+     * x-exception-message headers, and acks its message. Never fails, if the event can't be published its
+     * message is requeued instead.
+     */
+    public Mono<Void> deadLetter(Message<? extends Event<?, ?>> message, Throwable ex) {
+        Event<?, ?> event = message.getPayload();
+        return Mono.fromRunnable(() -> {
+                    boolean sent = streamBridge.send(DEAD_LETTERS_BINDING, MessageBuilder.withPayload(event)
+                            .setHeader(EXCEPTION_MESSAGE_HEADER, String.valueOf(ex.getMessage()))
+                            .setHeader(EXCEPTION_TYPE_HEADER, ex.getClass().getName())
+                            .build());
+                    if (!sent) {
+                        throw new IllegalStateException("The dead-letter destination did not accept the message");
+                    }
+                })
+                .subscribeOn(scheduler)
+                .doOnSuccess(v -> {
+                    eventMetrics.recordProcessed(message, true);
+                    ack(message);
+                })
+                .onErrorResume(sendEx -> {
+                    LOG.error("Failed to dead letter message created at {}, will requeue it: {}", event.getEventCreatedAt(), sendEx.toString());
+                    requeue(message);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void publishAccepted(Event<?, ?> event) {
+        try {
+            if (!streamBridge.send(ACCEPTED_EVENTS_BINDING, event)) {
+                LOG.warn("The accepted-events destination did not accept the {} event for key {}", event.getEventType(), event.getKey());
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to publish the accepted {} event for key {}: {}", event.getEventType(), event.getKey(), e.toString());
+        }
+    }
+
+    private static void ack(Message<?> message) {
+        Channel channel = channel(message.getHeaders());
+        if (channel == null) {
+            return;
+        }
+        try {
+            synchronized (channel) {
+                channel.basicAck(deliveryTag(message.getHeaders()), false);
+            }
+        } catch (IOException | RuntimeException e) {
+            // The message is redelivered when the channel is closed
+            LOG.warn("Failed to ack message, it will be redelivered: {}", e.toString());
+        }
+    }
+
+    private static void requeue(Message<?> message) {
+        Channel channel = channel(message.getHeaders());
+        if (channel == null) {
+            return;
+        }
+        try {
+            synchronized (channel) {
+                channel.basicNack(deliveryTag(message.getHeaders()), false, true);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to requeue message, it will be redelivered when the channel is closed: {}", e.toString());
+        }
+    }
+
+    /**
+     * The channel of a message from a RabbitMQ consumer binding with acknowledgeMode = MANUAL, else null.
+     */
+    private static Channel channel(MessageHeaders headers) {
+        Object channel = headers.get(RABBIT_CHANNEL_HEADER);
+        return channel instanceof Channel && headers.get(RABBIT_DELIVERY_TAG_HEADER) != null ? (Channel) channel : null;
+    }
+
+    private static long deliveryTag(MessageHeaders headers) {
+        return ((Number) headers.get(RABBIT_DELIVERY_TAG_HEADER)).longValue();
+    }
+}
@@ -0,0 +1,66 @@
+package com.pacifique.microservices.util.messaging;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.binder.ConsumerProperties;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Consumer lag gauges for the RabbitMQ binder: the number of messages ready in the queue of each consumer binding
+ * with a group, i.e. the messages the instance has not received yet.
+ *
+ * The Kafka binder publishes the consumer lag of each group and topic itself, as spring.cloud.stream.binder.kafka.offset.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.cloud.stream.defaultBinder", havingValue = "rabbit")
+public class RabbitConsumerLagMetrics {
+    private static final Logger LOG = LoggerFactory.getLogger(RabbitConsumerLagMetrics.class);
+
+    public static final String CONSUMER_LAG = "event.consumer.lag";
+
+    private final RabbitAdmin admin;
+
+    @Autowired
+    public RabbitConsumerLagMetrics(BindingServiceProperties bindingServiceProperties, ConnectionFactory connectionFactory, MeterRegistry meterRegistry) {
+        this.admin = new RabbitAdmin(connectionFactory);
+        bindingServiceProperties.getBindings().forEach((bindingName, binding) -> {
+            if (binding.getGroup() == null || binding.getDestination() == null || !bindingName.contains("-in-")) {
+                return;
+            }
+            ConsumerProperties consumer = binding.getConsumer();
+            boolean partitioned = consumer != null && consumer.isPartitioned();
+            int instanceIndex = consumer != null && consumer.getInstanceIndex() >= 0 ? consumer.getInstanceIndex() : bindingServiceProperties.getInstanceIndex();
+            // The queue names of the binder, destination.group, with the instance index for a partitioned consumer
+            String queue = binding.getDestination() + "." + binding.getGroup() + (partitioned ? "-" + instanceIndex : "");
+
+            LOG.info("Registers a consumer lag gauge for the queue {} of the binding {}", queue, bindingName);
+            Gauge.builder(CONSUMER_LAG, this, metrics -> metrics.readyMessages(queue))
+                    .description("Messages ready in the queue of a consumer binding")
+                    .tags("binder", "rabbit", "destination", binding.getDestination(), "group", binding.getGroup(),
+                            "partition", partitioned ? String.valueOf(instanceIndex) : "none")
+                    .register(meterRegistry);
+        });
+    }
+
+    /**
+     * Asks the broker, every time the gauge is read.
+     */
+    private double readyMessages(String queue) {
+        try {
+            QueueInformation info = admin.getQueueInfo(queue);
+            return info == null ? Double.NaN : info.getMessageCount();
+        } catch (AmqpException e) {
+            LOG.debug("Failed to get the message count of the queue {}: {}", queue, e.toString());
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.pacifique.microservices.util.paging;
+
+import com.pacifique.microservices.api.exceptions.InvalidInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursor for keyset pagination over the (productId, id) key of the reviews and recommendations.
+ *
+ * The cursor holds the key of the last item of a page, the next page starts after that key. To the
+ * clients the cursor is an opaque, URL safe string.
+ */
+public final class KeysetCursor {
+
+    /**
+     * The id the first page starts after, the ids aren't validated, so 0 and negative ids are paged too.
+     */
+    public static final int BEFORE_FIRST_ID = Integer.MIN_VALUE;
+
+    private KeysetCursor() {
+    }
+
+    public static String encode(int productId, int id) {
+        String key = productId + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @return the id after which the page of the product starts, BEFORE_FIRST_ID for the first page, i.e. when there
+     * is no cursor
+     */
+    public static int decode(String cursor, int productId) {
+        if (cursor == null || cursor.isEmpty()) {
+            return BEFORE_FIRST_ID;
+        }
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int separator = key.indexOf(':');
+            if (separator > 0 && Integer.parseInt(key.substring(0, separator)) == productId) {
+                return Integer.parseInt(key.substring(separator + 1));
+            }
+        } catch (IllegalArgumentException e) {
+            // Falls through to the invalid cursor error, NumberFormatException is an IllegalArgumentException
+        }
+        throw new InvalidInputException("Invalid cursor: " + cursor + " for productId: " + productId);
+    }
+
+    public static void validateLimit(int limit, int maxLimit) {
+        if (limit < 1 || limit > maxLimit) {
+            throw new InvalidInputException("Invalid limit: " + limit + ", must be between 1 and " + maxLimit);
+        }
+    }
+}
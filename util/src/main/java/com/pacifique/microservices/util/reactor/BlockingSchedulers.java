@@ -0,0 +1,94 @@
+package com.pacifique.microservices.util.reactor;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the schedulers that blocking calls, e.g. JDBC or message broker calls, are subscribed on.
+ *
+ * With app.scheduler.mode = bounded-elastic, the default, a scheduler runs the calls on up to threadPoolSize
+ * platform threads and rejects calls when taskQueueSize calls are waiting. With app.scheduler.mode = virtual-threads,
+ * each call runs on its own virtual thread, so the number of concurrent calls is only limited by the resources
+ * they use, e.g. the size of the connection pool.
+ *
+ * A virtual thread that blocks inside a synchronized block pins its carrier thread. When virtual threads are
+ * used, pinned threads that block longer than app.scheduler.pinnedThresholdMs are logged with their stack trace.
+ */
+@Component
+public class BlockingSchedulers {
+    private static final Logger LOG = LoggerFactory.getLogger(BlockingSchedulers.class);
+
+    public static final String BOUNDED_ELASTIC = "bounded-elastic";
+    public static final String VIRTUAL_THREADS = "virtual-threads";
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final String mode;
+    private final Duration pinnedThreshold;
+    private RecordingStream pinnedThreads;
+
+    @Autowired
+    public BlockingSchedulers(
+            @Value("${app.scheduler.mode:" + BOUNDED_ELASTIC + "}") String mode,
+            @Value("${app.scheduler.pinnedThresholdMs:20}") Integer pinnedThresholdMs) {
+        this.mode = mode;
+        this.pinnedThreshold = Duration.ofMillis(pinnedThresholdMs);
+        if (!BOUNDED_ELASTIC.equals(mode) && !VIRTUAL_THREADS.equals(mode)) {
+            throw new IllegalArgumentException("Unknown app.scheduler.mode: " + mode + ", expected " + BOUNDED_ELASTIC + " or " + VIRTUAL_THREADS);
+        }
+    }
+
+    public Scheduler newScheduler(String name, int threadPoolSize, int taskQueueSize) {
+        if (VIRTUAL_THREADS.equals(mode)) {
+            LOG.info("Creates a {} scheduler with a virtual thread per task", name);
+            startPinnedThreadsMonitor();
+            return Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), name);
+        }
+        LOG.info("Creates a bounded elastic {} scheduler with thread pool size = {} and task queue size = {}", name, threadPoolSize, taskQueueSize);
+        return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize, name);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (pinnedThreads != null) {
+            pinnedThreads.close();
+            pinnedThreads = null;
+        }
+    }
+
+    private synchronized void startPinnedThreadsMonitor() {
+        if (pinnedThreads != null || pinnedThreshold.isZero()) {
+            return;
+        }
+        pinnedThreads = new RecordingStream();
+        pinnedThreads.enable(PINNED_EVENT).withThreshold(pinnedThreshold).withStackTrace();
+        pinnedThreads.onEvent(PINNED_EVENT, this::logPinnedThread);
+        pinnedThreads.startAsync();
+        LOG.info("Logs virtual threads that are pinned for more than {} ms", pinnedThreshold.toMillis());
+    }
+
+    private void logPinnedThread(RecordedEvent event) {
+        StringBuilder stackTrace = new StringBuilder();
+        if (event.getStackTrace() != null) {
+            for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+                stackTrace.append("\n\tat ").append(frame.getMethod().getType().getName())
+                        .append('.').append(frame.getMethod().getName())
+                        .append(':').append(frame.getLineNumber());
+            }
+        }
+        LOG.warn("Virtual thread {} was pinned to its carrier thread for {} ms{}",
+                event.getThread() != null ? event.getThread().getJavaName() : "unknown", event.getDuration().toMillis(), stackTrace);
+    }
+}
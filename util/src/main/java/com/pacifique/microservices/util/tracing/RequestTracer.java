@@ -0,0 +1,126 @@
+package com.pacifique.microservices.util.tracing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sampled, structured traces of the requests and messages a service handles, instead of logging every request and
+ * every signal of its publishers.
+ *
+ * When tracing is disabled, app.tracing.enabled = false, the default, trace returns the publisher as is and
+ * nothing is allocated. When it is enabled, a share of the publishers, app.tracing.sampleRate, is traced: one line is
+ * logged on the request-trace logger when a subscription ends, e.g.
+ *
+ *   operation=getProduct key=1 outcome=SUCCESS elements=1 durationMicros=812 thread=reactor-http-nio-2
+ *
+ * The outcome is SUCCESS, CANCELLED or the simple name of the exception. Tracing is switched on and off, and the
+ * sample rate changed, at runtime with the tracing actuator endpoint, see RequestTracingEndpoint.
+ */
+@Component
+public class RequestTracer {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestTracer.class);
+    private static final Logger TRACE_LOG = LoggerFactory.getLogger("request-trace");
+
+    private volatile boolean enabled;
+    private volatile double sampleRate;
+
+    @Autowired
+    public RequestTracer(
+            @Value("${app.tracing.enabled:false}") Boolean enabled,
+            @Value("${app.tracing.sampleRate:0.01}") Double sampleRate) {
+        configure(enabled, sampleRate);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public synchronized void configure(boolean enabled, double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Invalid sampleRate: " + sampleRate + ", expected a value from 0 to 1");
+        }
+        LOG.info("Request tracing enabled = {}, sampleRate = {}", enabled, sampleRate);
+        this.sampleRate = sampleRate;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param key e.g. the product id, or the number of ids for a request with a list of ids
+     */
+    public <T> Mono<T> trace(String operation, long key, Mono<T> publisher) {
+        // The key is only boxed for a sampled publisher
+        return sampled() ? traced(operation, key, publisher) : publisher;
+    }
+
+    public <T> Mono<T> trace(String operation, Object key, Mono<T> publisher) {
+        return sampled() ? traced(operation, key, publisher) : publisher;
+    }
+
+    public <T> Flux<T> trace(String operation, long key, Flux<T> publisher) {
+        return sampled() ? traced(operation, key, publisher) : publisher;
+    }
+
+    public <T> Flux<T> trace(String operation, Object key, Flux<T> publisher) {
+        return sampled() ? traced(operation, key, publisher) : publisher;
+    }
+
+    private boolean sampled() {
+        if (!enabled) {
+            return false;
+        }
+        double rate = sampleRate;
+        return rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static <T> Mono<T> traced(String operation, Object key, Mono<T> publisher) {
+        return Mono.defer(() -> {
+            Span span = new Span(operation, key);
+            return publisher
+                    .doOnSuccess(result -> span.end(result == null ? 0 : 1, "SUCCESS"))
+                    .doOnError(ex -> span.end(0, ex.getClass().getSimpleName()))
+                    .doOnCancel(() -> span.end(0, "CANCELLED"));
+        });
+    }
+
+    private static <T> Flux<T> traced(String operation, Object key, Flux<T> publisher) {
+        return Flux.defer(() -> {
+            Span span = new Span(operation, key);
+            return publisher
+                    .doOnNext(element -> span.elements++)
+                    .doOnComplete(() -> span.end(span.elements, "SUCCESS"))
+                    .doOnError(ex -> span.end(span.elements, ex.getClass().getSimpleName()))
+                    .doOnCancel(() -> span.end(span.elements, "CANCELLED"));
+        });
+    }
+
+    /**
+     * One subscription to a sampled publisher, the signals of a subscription are serialized.
+     */
+    private static final class Span {
+        private final String operation;
+        private final Object key;
+        private final long start = System.nanoTime();
+        private long elements;
+
+        private Span(String operation, Object key) {
+            this.operation = operation;
+            this.key = key;
+        }
+
+        private void end(long elements, String outcome) {
+            TRACE_LOG.info("operation={} key={} outcome={} elements={} durationMicros={} thread={}",
+                    operation, key, outcome, elements, (System.nanoTime() - start) / 1000, Thread.currentThread().getName());
+        }
+    }
+}
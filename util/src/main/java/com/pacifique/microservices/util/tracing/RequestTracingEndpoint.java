@@ -0,0 +1,47 @@
+package com.pacifique.microservices.util.tracing;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Switches the request tracing at runtime, e.g.
+ *
+ *   curl -X POST localhost:8080/actuator/tracing -H "Content-Type: application/json" -d '{"enabled": true, "sampleRate": 0.1}'
+ *
+ * The settings are not persisted, a restarted instance uses app.tracing.enabled and app.tracing.sampleRate again.
+ */
+@Component
+@Endpoint(id = "tracing")
+public class RequestTracingEndpoint {
+
+    private final RequestTracer tracer;
+
+    @Autowired
+    public RequestTracingEndpoint(RequestTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> settings() {
+        return Map.of("enabled", tracer.isEnabled(), "sampleRate", tracer.getSampleRate());
+    }
+
+    @WriteOperation
+    public Map<String, Object> configure(@Nullable Boolean enabled, @Nullable Double sampleRate) {
+        try {
+            tracer.configure(
+                    enabled != null ? enabled : tracer.isEnabled(),
+                    sampleRate != null ? sampleRate : tracer.getSampleRate());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+        return settings();
+    }
+}